@@ -0,0 +1,126 @@
+package com.example.reportsystem.benchmark;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 基准测试用的 Word 模板和数据
+ * 模板在内存中生成，结构与仓库根目录的 test_template.html（员工考核报告）、
+ * word_template_v2.html（带循环表格的报告）一致，避免基准依赖人工维护的二进制 .docx。
+ * 数据使用固定随机种子，保证每次运行的输入完全相同。
+ */
+final class BenchmarkTemplates {
+
+    static final String TABLE_TAG = "dimensions";
+
+    private static final long SEED = 20241018L;
+
+    private BenchmarkTemplates() {
+    }
+
+    /**
+     * 员工考核报告：段落变量 + 基本信息表格，没有循环
+     */
+    static byte[] simpleTemplate() {
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("{{title}}");
+            document.createParagraph().createRun().setText("报告编号：{{reportId}}");
+            document.createParagraph().createRun().setText("生成日期：{{reportDate}}");
+
+            String[][] cells = {
+                    {"姓名", "{{name}}", "工号", "{{employeeId}}"},
+                    {"部门", "{{department}}", "职位", "{{position}}"},
+                    {"职级", "{{level}}", "性别", "{{gender}}"},
+                    {"入职日期", "{{joinDate}}", "年龄", "{{age}}"},
+                    {"考核周期", "{{reportPeriod}}", "综合评分", "{{overallScore}}"},
+                    {"排名", "{{rank}}", "考核人", "{{reviewer}}"}
+            };
+            XWPFTable table = document.createTable(cells.length, 4);
+            for (int i = 0; i < cells.length; i++) {
+                for (int j = 0; j < 4; j++) {
+                    table.getRow(i).getCell(j).setText(cells[i][j]);
+                }
+            }
+            return toBytes(document);
+        } catch (IOException e) {
+            throw new IllegalStateException("生成基准模板失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 循环表格报告：表头行放 {{dimensions}}，第二行为 LoopRowTableRenderPolicy 的模板行
+     */
+    static byte[] tableTemplate() {
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("{{title}}");
+            XWPFTable table = document.createTable(2, 5);
+            XWPFTableRow header = table.getRow(0);
+            header.getCell(0).setText("序号{{" + TABLE_TAG + "}}");
+            header.getCell(1).setText("考核维度");
+            header.getCell(2).setText("分数");
+            header.getCell(3).setText("权重");
+            header.getCell(4).setText("评价");
+            XWPFTableRow row = table.getRow(1);
+            row.getCell(0).setText("[index]");
+            row.getCell(1).setText("[dimension]");
+            row.getCell(2).setText("[score]");
+            row.getCell(3).setText("[weight]");
+            row.getCell(4).setText("[comment]");
+            document.createParagraph().createRun().setText("考核人：{{reviewer}}");
+            return toBytes(document);
+        } catch (IOException e) {
+            throw new IllegalStateException("生成基准模板失败: " + e.getMessage(), e);
+        }
+    }
+
+    static Map<String, Object> simpleData() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("title", "2024年第一季度员工考核报告");
+        data.put("reportId", "RPT2024-Q1-001");
+        data.put("reportDate", "2024-04-01");
+        data.put("name", "张三");
+        data.put("employeeId", "EMP20240115001");
+        data.put("department", "研发部");
+        data.put("position", "高级工程师");
+        data.put("level", "良好");
+        data.put("gender", "男");
+        data.put("joinDate", "2022-03-15");
+        data.put("age", 30);
+        data.put("reportPeriod", "2024年第一季度");
+        data.put("overallScore", "88.5");
+        data.put("rank", "15/50");
+        data.put("reviewer", "王经理");
+        return data;
+    }
+
+    static List<Map<String, Object>> rows(int count) {
+        Random random = new Random(SEED);
+        String[] dimensions = {"工作业绩", "专业能力", "团队协作", "创新能力", "学习成长"};
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("index", i + 1);
+            row.put("dimension", dimensions[i % dimensions.length]);
+            row.put("score", 60 + random.nextInt(41));
+            row.put("weight", (5 + random.nextInt(31)) + "%");
+            row.put("comment", "第" + (i + 1) + "项考核评价，得分" + random.nextInt(100));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static byte[] toBytes(XWPFDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.reportsystem.benchmark;
+
+import com.deepoove.poi.config.Configure;
+import com.example.reportsystem.cache.GroovyScriptCache;
+import com.example.reportsystem.util.ScriptLogger;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模板 Groovy 脚本执行耗时
+ * cached：走 GroovyScriptCache（编译一次，每次只创建 Script 实例），即生产路径；
+ * evaluate：每次 GroovyShell.evaluate 重新编译，作为对照。
+ * 脚本与 test_template_script.txt 同类：设置基本字段后逐行整理表格数据。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class GroovyScriptBenchmark {
+
+    private static final String SCRIPT = String.join("\n",
+            "data.put('title', '2024年第一季度员工考核报告')",
+            "data.put('reportId', 'RPT2024-Q1-001')",
+            "def rows = []",
+            "data.source.eachWithIndex { item, i ->",
+            "    rows << [index: i + 1, dimension: item.dimension, score: item.score,",
+            "             weight: item.weight, comment: String.format('%s（%d分）', item.comment, item.score)]",
+            "}",
+            "data.put('dimensions', rows)",
+            "log.info('处理完成，共 ' + rows.size() + ' 行')",
+            "return data");
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private GroovyScriptCache scriptCache;
+    private List<Map<String, Object>> source;
+
+    @Setup
+    public void setup() {
+        scriptCache = new GroovyScriptCache();
+        ReflectionTestUtils.setField(scriptCache, "maxEntries", 16);
+        source = BenchmarkTemplates.rows(rows);
+    }
+
+    @Benchmark
+    public Object cached() {
+        return scriptCache.run(1L, SCRIPT, variables());
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return new GroovyShell(new Binding(variables())).evaluate(SCRIPT);
+    }
+
+    private Map<String, Object> variables() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("source", source);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("data", data);
+        variables.put("params", new HashMap<>());
+        variables.put("config", Configure.builder());
+        variables.put("log", new ScriptLogger());
+        return variables;
+    }
+}
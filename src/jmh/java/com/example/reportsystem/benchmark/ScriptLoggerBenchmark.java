@@ -0,0 +1,44 @@
+package com.example.reportsystem.benchmark;
+
+import com.example.reportsystem.util.ScriptLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScriptLogger 开销：脚本逐行打日志的场景，log 只写入，logAndCollect 再拼接 getFullLog（保存 execution_log 时的路径）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ScriptLoggerBenchmark {
+
+    @Param({"100", "10000"})
+    public int lines;
+
+    @Benchmark
+    public ScriptLogger log() {
+        ScriptLogger logger = new ScriptLogger();
+        for (int i = 0; i < lines; i++) {
+            logger.info("处理第 " + i + " 行数据");
+        }
+        return logger;
+    }
+
+    @Benchmark
+    public String logAndCollect() {
+        return log().getFullLog();
+    }
+}
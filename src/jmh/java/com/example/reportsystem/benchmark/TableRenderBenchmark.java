@@ -0,0 +1,122 @@
+package com.example.reportsystem.benchmark;
+
+import com.deepoove.poi.XWPFTemplate;
+import com.deepoove.poi.config.Configure;
+import com.deepoove.poi.plugin.table.LoopRowTableRenderPolicy;
+import com.deepoove.poi.policy.RenderPolicy;
+import com.example.reportsystem.render.StreamingRowTableRenderPolicy;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 循环表格渲染耗时：render 单独计时，writeDocument 包含写出 docx（对应 write 阶段）。
+ * 每次调用前都重新 compile（poi-tl 模板渲染后不可复用），compile 放在 Invocation 级 Setup 中不计入结果。
+ * policy=loop 为 LoopRowTableRenderPolicy，streaming 为 StreamingRowTableRenderPolicy；
+ * HeapCounters.peakHeapBytes 记录单次渲染期间各堆内存池峰值之和（上界估计）。
+ * 1000000 行只建议跑 streaming：-Djmh.params="-p rows=1000000 -p policy=streaming"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TableRenderBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    @Param({"loop", "streaming"})
+    public String policy;
+
+    private byte[] templateBytes;
+    private Map<String, Object> data;
+    private XWPFTemplate template;
+
+    @Setup(Level.Trial)
+    public void prepareData() {
+        templateBytes = BenchmarkTemplates.tableTemplate();
+        data = BenchmarkTemplates.simpleData();
+        List<Map<String, Object>> list = BenchmarkTemplates.rows(rows);
+        data.put(BenchmarkTemplates.TABLE_TAG, list);
+    }
+
+    @Setup(Level.Invocation)
+    public void compile() throws IOException {
+        RenderPolicy tablePolicy = "streaming".equals(policy)
+                ? new StreamingRowTableRenderPolicy() : new LoopRowTableRenderPolicy();
+        Configure config = Configure.builder()
+                .bind(BenchmarkTemplates.TABLE_TAG, tablePolicy)
+                .build();
+        template = XWPFTemplate.compile(new ByteArrayInputStream(templateBytes), config);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        template.close();
+    }
+
+    @Benchmark
+    public XWPFTemplate render(HeapCounters counters) {
+        template.render(data);
+        counters.record();
+        return template;
+    }
+
+    @Benchmark
+    public XWPFTemplate renderAndWrite(HeapCounters counters) throws IOException {
+        template.render(data);
+        template.write(NullOutputStream.NULL_OUTPUT_STREAM);
+        counters.record();
+        return template;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        public long peakHeapBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            peakHeapBytes = 0;
+        }
+
+        void record() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            peakHeapBytes = Math.max(peakHeapBytes, peak);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.reportsystem.benchmark;
+
+import com.deepoove.poi.XWPFTemplate;
+import com.deepoove.poi.config.Configure;
+import com.deepoove.poi.plugin.table.LoopRowTableRenderPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XWPFTemplate.compile 耗时：对应生成流水线中的 compile 阶段
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class TemplateCompileBenchmark {
+
+    @Param({"simple", "table"})
+    public String template;
+
+    private byte[] templateBytes;
+
+    @Setup
+    public void setup() {
+        templateBytes = "simple".equals(template) ? BenchmarkTemplates.simpleTemplate() : BenchmarkTemplates.tableTemplate();
+    }
+
+    @Benchmark
+    public XWPFTemplate compile() throws IOException {
+        Configure config = Configure.builder()
+                .bind(BenchmarkTemplates.TABLE_TAG, new LoopRowTableRenderPolicy())
+                .build();
+        XWPFTemplate compiled = XWPFTemplate.compile(new ByteArrayInputStream(templateBytes), config);
+        compiled.close();
+        return compiled;
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.reportsystem.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.example.reportsystem.datasource.CompactRowList;
+import com.example.reportsystem.datasource.StreamingJsonParser;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据接口响应缓存
+ * 以 URL + 排序后的查询参数为键缓存接口返回的原始报文：TTL 内直接命中；过期后若有 ETag/Last-Modified
+ * 则发送条件请求，304 时续期；同一键的并发请求合并为一次上游调用。
+ * 缓存的是原始报文而不是解析后的 Map，每次生成都会重新解析，避免脚本修改数据影响其他生成任务。
+ * 超过流式阈值的大报文直接从响应流解析为紧凑行数据，不进入缓存（未返回 Content-Length 时先缓冲至多阈值大小，
+ * 读完则按普通报文处理）；合并等待的请求拿到顶层 Map 的浅拷贝，紧凑行数据在它们之间共享，
+ * 每次生成拿到各自的写时复制视图，脚本修改行不影响其他生成任务。
+ */
+@Slf4j
+@Component
+public class DataSourceCache {
+
+    @Autowired
+    @Qualifier("dataSourceHttpClient")
+    private OkHttpClient httpClient;
+
+    @Value("${report.cache.data-source.enabled:true}")
+    private boolean enabled;
+
+    @Value("${report.cache.data-source.default-ttl:0}")
+    private int defaultTtlSeconds;
+
+    @Value("${report.cache.data-source.max-entries:512}")
+    private int maxEntries;
+
+    @Value("${report.cache.data-source.max-entry-bytes:4194304}")
+    private int maxEntryBytes;
+
+    @Value("${report.datasource.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    @Value("${report.datasource.streaming.threshold-bytes:8388608}")
+    private long streamingThresholdBytes;
+
+    @Value("${report.datasource.streaming.unknown-length:false}")
+    private boolean streamUnknownLength;
+
+    @Value("${report.datasource.max-payload-bytes:268435456}")
+    private long maxPayloadBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Long, TemplateStats> templateStats = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        private final String body;
+        private final Object streamed;
+        private final String etag;
+        private final String lastModified;
+        private final long fetchMillis;
+        private volatile long expiresAt;
+
+        Entry(String body, Object streamed, String etag, String lastModified, long fetchMillis) {
+            this.body = body;
+            this.streamed = streamed;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchMillis = fetchMillis;
+        }
+    }
+
+    private static class TemplateStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong revalidated = new AtomicLong();
+        private final AtomicLong savedMillis = new AtomicLong();
+        private final AtomicLong streamedFetches = new AtomicLong();
+        private volatile long lastBytes;
+        private volatile long lastRows;
+        private volatile long lastParseMillis;
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            long hitCount = hits.get() + coalesced.get() + revalidated.get();
+            long total = hitCount + misses.get();
+            map.put("hits", hits.get());
+            map.put("coalesced", coalesced.get());
+            map.put("revalidated", revalidated.get());
+            map.put("misses", misses.get());
+            map.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+            map.put("savedMillis", savedMillis.get());
+            map.put("streamedFetches", streamedFetches.get());
+            map.put("lastBytes", lastBytes);
+            map.put("lastRows", lastRows);
+            map.put("lastParseMillis", lastParseMillis);
+            return map;
+        }
+    }
+
+    /**
+     * 获取接口数据（已解析的 JSON）
+     *
+     * @param ttlSeconds 模板配置的缓存时间（秒），为 null 时使用默认值，0 表示不缓存（仍合并并发请求）
+     */
+    public Object fetch(Long templateId, String apiUrl, Map<String, Object> params, Integer ttlSeconds) {
+        return fetch(templateId, apiUrl, params, ttlSeconds, null);
+    }
+
+    /**
+     * 获取接口数据（已解析的 JSON），timeoutMillis 为单次上游调用的总超时时间，为 null 时使用客户端默认超时
+     */
+    public Object fetch(Long templateId, String apiUrl, Map<String, Object> params, Integer ttlSeconds,
+                        Integer timeoutMillis) {
+        HttpUrl url = buildUrl(apiUrl, params);
+        TemplateStats stats = templateStats.computeIfAbsent(templateId != null ? templateId : 0L, k -> new TemplateStats());
+        if (!enabled) {
+            return materialize(load(url, null, timeoutMillis, stats), stats);
+        }
+
+        String key = url.toString();
+        long ttlMillis = (ttlSeconds != null ? ttlSeconds : defaultTtlSeconds) * 1000L;
+
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            stats.hits.incrementAndGet();
+            stats.savedMillis.addAndGet(cached.fetchMillis);
+            return materialize(cached, stats);
+        }
+
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            long start = System.currentTimeMillis();
+            Entry shared = join(existing);
+            stats.coalesced.incrementAndGet();
+            stats.savedMillis.addAndGet(System.currentTimeMillis() - start);
+            return materialize(shared, stats);
+        }
+
+        try {
+            Entry loaded = load(url, cached, timeoutMillis, stats);
+            if (loaded == cached) {
+                stats.revalidated.incrementAndGet();
+                stats.savedMillis.addAndGet(cached.fetchMillis);
+                cached.expiresAt = System.currentTimeMillis() + ttlMillis;
+            } else {
+                stats.misses.incrementAndGet();
+                if (ttlMillis > 0 && loaded.body != null && loaded.body.length() <= maxEntryBytes) {
+                    loaded.expiresAt = System.currentTimeMillis() + ttlMillis;
+                    put(key, loaded);
+                }
+            }
+            future.complete(loaded);
+            return materialize(loaded, stats);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("inFlight", inFlight.size());
+        Map<String, Object> perTemplate = new TreeMap<>();
+        templateStats.forEach((templateId, value) -> perTemplate.put(String.valueOf(templateId), value.toMap()));
+        stats.put("templates", perTemplate);
+        return stats;
+    }
+
+    private Entry load(HttpUrl url, Entry stale, Integer timeoutMillis, TemplateStats stats) {
+        Request.Builder requestBuilder = new Request.Builder().url(url).get();
+        if (stale != null && stale.etag != null) {
+            requestBuilder.header("If-None-Match", stale.etag);
+        }
+        if (stale != null && stale.lastModified != null) {
+            requestBuilder.header("If-Modified-Since", stale.lastModified);
+        }
+
+        OkHttpClient client = timeoutMillis != null
+                ? httpClient.newBuilder().callTimeout(timeoutMillis, TimeUnit.MILLISECONDS).build()
+                : httpClient;
+
+        long start = System.currentTimeMillis();
+        try (Response response = client.newCall(requestBuilder.build()).execute()) {
+            if (response.code() == 304 && stale != null) {
+                return stale;
+            }
+            if (!response.isSuccessful()) {
+                throw new RuntimeException("API 调用失败: " + response.code());
+            }
+
+            ResponseBody responseBody = response.body();
+            long contentLength = responseBody.contentLength();
+            if (maxPayloadBytes > 0 && contentLength > maxPayloadBytes) {
+                throw new RuntimeException("接口返回数据超过上限: " + maxPayloadBytes + " 字节");
+            }
+            MediaType contentType = responseBody.contentType();
+            Charset charset = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+
+            InputStream bodyStream = responseBody.byteStream();
+            boolean stream = streamingEnabled && contentLength > streamingThresholdBytes;
+            if (streamingEnabled && contentLength < 0) {
+                if (streamUnknownLength) {
+                    stream = true;
+                } else {
+                    // 长度未知时先读取至多阈值大小：读完说明报文不大，按普通报文处理（可进入缓存）
+                    byte[] head = IOUtils.toByteArray(new BoundedInputStream(bodyStream, streamingThresholdBytes + 1));
+                    stream = head.length > streamingThresholdBytes;
+                    bodyStream = new SequenceInputStream(new ByteArrayInputStream(head), bodyStream);
+                }
+            }
+            if (stream) {
+                StreamingJsonParser.Result result = StreamingJsonParser.parse(bodyStream, charset, maxPayloadBytes);
+                stats.streamedFetches.incrementAndGet();
+                recordIngestion(stats, url, result.getBytes(), result.getRows(), result.getParseMillis());
+                return new Entry(null, result.getData(), response.header("ETag"), response.header("Last-Modified"),
+                        System.currentTimeMillis() - start);
+            }
+
+            String body = new String(IOUtils.toByteArray(
+                    StreamingJsonParser.limit(bodyStream, maxPayloadBytes)), charset);
+            return new Entry(body, null, response.header("ETag"), response.header("Last-Modified"),
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object materialize(Entry entry, TemplateStats stats) {
+        if (entry.streamed != null) {
+            if (entry.streamed instanceof Map) {
+                Map<String, Object> copy = new LinkedHashMap<>((Map<String, Object>) entry.streamed);
+                copy.replaceAll((key, value) -> mutableRows(value));
+                return copy;
+            }
+            return mutableRows(entry.streamed);
+        }
+        long start = System.currentTimeMillis();
+        Object data = JSON.parse(entry.body);
+        long rows = data instanceof List ? ((List<?>) data).size() : 0;
+        recordIngestion(stats, null, entry.body.length(), rows, System.currentTimeMillis() - start);
+        return data;
+    }
+
+    private static Object mutableRows(Object value) {
+        return value instanceof CompactRowList ? ((CompactRowList) value).mutableView() : value;
+    }
+
+    private void recordIngestion(TemplateStats stats, HttpUrl url, long bytes, long rows, long parseMillis) {
+        stats.lastBytes = bytes;
+        stats.lastRows = rows;
+        stats.lastParseMillis = parseMillis;
+        if (url != null) {
+            log.info("流式解析接口数据: {}，{} 字节，{} 行，耗时 {} ms", url, bytes, rows, parseMillis);
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static HttpUrl buildUrl(String apiUrl, Map<String, Object> params) {
+        HttpUrl.Builder urlBuilder = HttpUrl.parse(apiUrl).newBuilder();
+        if (params != null) {
+            // 参数排序后拼接，保证相同参数生成相同的缓存键
+            for (Map.Entry<String, Object> entry : new TreeMap<>(params).entrySet()) {
+                urlBuilder.addQueryParameter(entry.getKey(), entry.getValue() != null ? entry.getValue().toString() : "");
+            }
+        }
+        return urlBuilder.build();
+    }
+
+    private static Entry join(CompletableFuture<Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.reportsystem.cache;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import groovy.transform.CompileStatic;
+import groovy.transform.ThreadInterrupt;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Groovy 脚本编译缓存
+ * 同一模板的同一份脚本（模板ID + 脚本MD5）只编译一次，之后每次执行只创建新的 Script 实例和 Binding，
+ * 并发生成之间互不共享变量，也避免每次 eval 都在 Metaspace 中定义新类。
+ * <p>
+ * 脚本编译时注入 @ThreadInterrupt 检查（循环、闭包和方法入口），执行超时后由看门狗线程中断执行线程；
+ * 类加载器会持有它定义过的所有类，累计编译 recycle-after-classes 个脚本后整体换新，旧类随旧加载器一起卸载。
+ * 模板开启静态编译时，脚本以 TypedTemplateScript 为基类按 @CompileStatic 编译，与动态脚本分开缓存。
+ */
+@Slf4j
+@Component
+public class GroovyScriptCache {
+
+    @Value("${report.cache.script.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${report.cache.script.recycle-after-classes:500}")
+    private int recycleAfterClasses;
+
+    @Value("${report.script.timeout-seconds:60}")
+    private int defaultTimeoutSeconds;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private GroovyClassLoader dynamicLoader = newClassLoader(false);
+    private GroovyClassLoader staticLoader = newClassLoader(true);
+
+    private final LinkedHashMap<String, Class<? extends Script>> scripts = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int compiledSinceRecycle;
+    private long recycles;
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+
+    /**
+     * 脚本执行超时
+     */
+    public static class ScriptTimeoutException extends RuntimeException {
+        public ScriptTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 一次脚本执行的超时中断：结束标记和中断在同一把锁下判断，避免脚本已结束后才中断到线程池线程
+     */
+    private static class Deadline implements Runnable {
+        private final Thread thread;
+        private boolean finished;
+        private boolean expired;
+
+        Deadline(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!finished) {
+                expired = true;
+                thread.interrupt();
+            }
+        }
+
+        synchronized boolean finish() {
+            finished = true;
+            return expired;
+        }
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("report.script.cache.entries", this, cache -> cache.size())
+                .description("已缓存的 Groovy 脚本类数量")
+                .register(meterRegistry);
+        FunctionCounter.builder("report.script.timeouts", timeouts, AtomicLong::get)
+                .description("Groovy 脚本执行超时次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("report.script.loader.recycles", this, cache -> cache.recycleCount())
+                .description("Groovy 脚本类加载器回收次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行脚本，variables 会作为脚本的 Binding 变量注入（如 data、params、config、log）
+     */
+    public Object run(Long templateId, String scriptContent, Map<String, Object> variables) {
+        return run(templateId, scriptContent, variables, null, false);
+    }
+
+    /**
+     * 执行脚本，超过 timeoutSeconds 秒后中断；为空使用系统默认值，小于等于 0 表示不限制
+     */
+    public Object run(Long templateId, String scriptContent, Map<String, Object> variables,
+                      Integer timeoutSeconds, boolean compileStatic) {
+        Class<? extends Script> scriptClass = getScriptClass(templateId, scriptContent, compileStatic);
+        Script script = InvokerHelper.createScript(scriptClass, new Binding(new HashMap<>(variables)));
+
+        int timeout = timeoutSeconds != null ? timeoutSeconds : defaultTimeoutSeconds;
+        if (timeout <= 0) {
+            return script.run();
+        }
+
+        Deadline deadline = new Deadline(Thread.currentThread());
+        ScheduledFuture<?> interrupter = watchdog.schedule(deadline, timeout, TimeUnit.SECONDS);
+        try {
+            return script.run();
+        } catch (Exception e) {
+            if (deadline.finish()) {
+                timeouts.incrementAndGet();
+                throw new ScriptTimeoutException("Groovy 脚本执行超过 " + timeout + " 秒，已中断");
+            }
+            throw e;
+        } finally {
+            interrupter.cancel(false);
+            if (deadline.finish()) {
+                // 清除超时中断标记，避免影响执行线程后续的任务
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * 校验脚本能否编译，静态编译模式下包括类型检查；用于模板保存时提前发现错误，编译结果不进入缓存
+     */
+    public void validate(String scriptContent, boolean compileStatic) {
+        GroovyClassLoader loader = newClassLoader(compileStatic);
+        try {
+            GroovyCodeSource codeSource = new GroovyCodeSource(scriptContent, "TemplateScriptValidation.groovy", "/groovy/script");
+            codeSource.setCachable(false);
+            loader.parseClass(codeSource, false);
+        } catch (CompilationFailedException e) {
+            throw new RuntimeException("Groovy 脚本编译失败: " + e.getMessage());
+        } finally {
+            loader.clearCache();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<? extends Script> getScriptClass(Long templateId, String scriptContent, boolean compileStatic) {
+        String hash = DigestUtils.md5DigestAsHex(scriptContent.getBytes(StandardCharsets.UTF_8));
+        String key = templateId + (compileStatic ? ":static:" : ":") + hash;
+
+        GroovyClassLoader loader;
+        synchronized (this) {
+            Class<? extends Script> cached = scripts.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            loader = compileStatic ? staticLoader : dynamicLoader;
+        }
+
+        String className = "TemplateScript_" + (templateId != null ? templateId : 0) + "_" + hash + (compileStatic ? "_static" : "");
+        GroovyCodeSource codeSource = new GroovyCodeSource(scriptContent, className + ".groovy", "/groovy/script");
+        codeSource.setCachable(false);
+        Class<? extends Script> compiled = (Class<? extends Script>) loader.parseClass(codeSource, false);
+        log.debug("编译 Groovy 脚本: {}", className);
+
+        synchronized (this) {
+            Class<? extends Script> existing = scripts.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (loader == dynamicLoader || loader == staticLoader) {
+                scripts.put(key, compiled);
+                evictOverflow();
+                if (++compiledSinceRecycle >= recycleAfterClasses && recycleAfterClasses > 0) {
+                    recycleClassLoader();
+                }
+            }
+        }
+        return compiled;
+    }
+
+    public synchronized void invalidate(Long templateId) {
+        String prefix = templateId + ":";
+        Iterator<Map.Entry<String, Class<? extends Script>>> iterator = scripts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Class<? extends Script>> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                InvokerHelper.removeClass(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", scripts.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        long total = hits + misses;
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("defaultTimeoutSeconds", defaultTimeoutSeconds);
+        stats.put("timeouts", timeouts.get());
+        stats.put("compiledSinceRecycle", compiledSinceRecycle);
+        stats.put("recycleAfterClasses", recycleAfterClasses);
+        stats.put("recycles", recycles);
+
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        stats.put("loadedClassCount", classLoading.getLoadedClassCount());
+        stats.put("unloadedClassCount", classLoading.getUnloadedClassCount());
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                stats.put("metaspaceUsed", pool.getUsage().getUsed());
+                stats.put("metaspaceCommitted", pool.getUsage().getCommitted());
+            }
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    private synchronized int size() {
+        return scripts.size();
+    }
+
+    private synchronized long recycleCount() {
+        return recycles;
+    }
+
+    /**
+     * 换用新的类加载器并清空缓存；正在执行的脚本继续使用旧类，执行结束后旧加载器及其类即可被回收
+     */
+    private void recycleClassLoader() {
+        for (Class<? extends Script> scriptClass : scripts.values()) {
+            InvokerHelper.removeClass(scriptClass);
+        }
+        scripts.clear();
+        dynamicLoader.clearCache();
+        staticLoader.clearCache();
+        dynamicLoader = newClassLoader(false);
+        staticLoader = newClassLoader(true);
+        compiledSinceRecycle = 0;
+        recycles++;
+        log.info("Groovy 脚本类加载器已回收，累计回收 {} 次", recycles);
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Class<? extends Script>>> iterator = scripts.entrySet().iterator();
+        while (scripts.size() > maxEntries && iterator.hasNext()) {
+            InvokerHelper.removeClass(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static GroovyClassLoader newClassLoader(boolean compileStatic) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+        if (compileStatic) {
+            configuration.setScriptBaseClass(TypedTemplateScript.class.getName());
+            configuration.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+        }
+        return new GroovyClassLoader(GroovyScriptCache.class.getClassLoader(), configuration);
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("groovy-script-watchdog-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
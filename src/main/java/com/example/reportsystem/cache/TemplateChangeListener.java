@@ -0,0 +1,180 @@
+package com.example.reportsystem.cache;
+
+import com.example.reportsystem.mapper.ReportTemplateMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模板变更的跨节点通知
+ * 修改模板的节点执行 pg_notify(channel, 模板ID)，每个节点用一条独立连接（不占用连接池）LISTEN 该通道，
+ * 收到后失效本地的模板元数据、模板文件和脚本缓存。连接断开重连后无法得知期间的通知，因此清空全部模板元数据。
+ */
+@Slf4j
+@Component
+public class TemplateChangeListener {
+
+    public static final String CHANNEL = "report_template_changed";
+
+    /**
+     * 通知内容为该值时失效全部模板
+     */
+    public static final String ALL = "*";
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Value("${report.cache.template-meta.listen.enabled:true}")
+    private boolean listenEnabled;
+
+    @Value("${report.cache.template-meta.listen.poll-timeout:10000}")
+    private int pollTimeoutMillis;
+
+    @Value("${report.cache.template-meta.listen.retry-interval:5000}")
+    private long retryIntervalMillis;
+
+    @Autowired
+    private ReportTemplateMapper templateMapper;
+
+    @Autowired
+    private TemplateMetadataCache templateMetadataCache;
+
+    @Autowired
+    private TemplateFileCache templateFileCache;
+
+    @Autowired
+    private GroovyScriptCache groovyScriptCache;
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile Thread listenerThread;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!listenEnabled) {
+            log.info("模板变更监听未开启，其他节点的模板修改最迟在缓存 ttl 后生效");
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::listenLoop, "template-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+        listenerThread = thread;
+    }
+
+    /**
+     * 失效本地缓存并通知其他节点
+     */
+    public void publish(Long templateId) {
+        invalidateLocal(templateId);
+        try {
+            templateMapper.notifyChange(CHANNEL, templateId != null ? String.valueOf(templateId) : ALL);
+        } catch (Exception e) {
+            log.warn("发送模板变更通知失败，其他节点将在缓存 ttl 后生效: {}", e.getMessage());
+        }
+    }
+
+    private void invalidateLocal(Long templateId) {
+        if (templateId == null) {
+            // 模板文件和脚本缓存分别按 updateTime、脚本内容做版本校验，只需清空元数据即可读到新版本
+            templateMetadataCache.clear();
+            return;
+        }
+        templateMetadataCache.invalidate(templateId);
+        templateFileCache.invalidate(templateId);
+        groovyScriptCache.invalidate(templateId);
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                if (reconnects.getAndIncrement() > 0) {
+                    // 断线期间可能错过通知
+                    invalidateLocal(null);
+                }
+                connected = true;
+                log.info("已开始监听模板变更通知: {}", CHANNEL);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMillis);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        received.incrementAndGet();
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                connected = false;
+                if (!running) {
+                    break;
+                }
+                log.warn("模板变更监听连接异常，{} 毫秒后重连: {}", retryIntervalMillis, e.getMessage());
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        connected = false;
+    }
+
+    private void handle(String payload) {
+        if (payload == null || payload.isEmpty() || ALL.equals(payload)) {
+            invalidateLocal(null);
+            return;
+        }
+        try {
+            invalidateLocal(Long.parseLong(payload));
+        } catch (NumberFormatException e) {
+            log.warn("无法识别的模板变更通知: {}", payload);
+            invalidateLocal(null);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", listenEnabled);
+        stats.put("connected", connected);
+        stats.put("received", received.get());
+        stats.put("reconnects", Math.max(0, reconnects.get() - 1));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread thread = listenerThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.reportsystem.cache;
+
+import com.example.reportsystem.entity.ReportTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Word 模板文件内存缓存
+ * 按模板ID缓存 MinIO 中的模板文件内容，以 filePath + updateTime 作为版本号，
+ * 模板文件更新或删除后自动失效；按总字节数做 LRU 淘汰。
+ * 返回的字节数组在多个生成任务间共享，调用方只能读取不能修改。
+ */
+@Slf4j
+@Component
+public class TemplateFileCache {
+
+    @Value("${report.cache.template.enabled:true}")
+    private boolean enabled;
+
+    @Value("${report.cache.template.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${report.cache.template.max-entry-bytes:16777216}")
+    private long maxEntryBytes;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Entry {
+        private final String version;
+        private final byte[] content;
+
+        Entry(String version, byte[] content) {
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    /**
+     * 获取模板文件内容，未命中或版本不一致时通过 loader 从存储中加载
+     */
+    public byte[] get(ReportTemplate template, Supplier<byte[]> loader) {
+        if (!enabled || template.getId() == null) {
+            return loader.get();
+        }
+
+        String version = versionOf(template);
+        synchronized (this) {
+            Entry entry = entries.get(template.getId());
+            if (entry != null && entry.version.equals(version)) {
+                hits++;
+                return entry.content;
+            }
+            misses++;
+        }
+
+        byte[] content = loader.get();
+        put(template.getId(), version, content);
+        return content;
+    }
+
+    public synchronized void invalidate(Long templateId) {
+        Entry removed = entries.remove(templateId);
+        if (removed != null) {
+            currentBytes -= removed.content.length;
+            log.debug("模板文件缓存失效: {}", templateId);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("bytes", currentBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        long total = hits + misses;
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        return stats;
+    }
+
+    private synchronized void put(Long templateId, String version, byte[] content) {
+        if (content.length > maxEntryBytes || content.length > maxBytes) {
+            log.debug("模板文件过大，不进入缓存: {} ({} 字节)", templateId, content.length);
+            return;
+        }
+
+        Entry previous = entries.put(templateId, new Entry(version, content));
+        if (previous != null) {
+            currentBytes -= previous.content.length;
+        }
+        currentBytes += content.length;
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(templateId)) {
+                continue;
+            }
+            currentBytes -= eldest.getValue().content.length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private String versionOf(ReportTemplate template) {
+        return template.getFilePath() + "@" + template.getUpdateTime();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.reportsystem.cache;
+
+import com.example.reportsystem.entity.ReportTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 模板元数据本地缓存（report_template 行）
+ * 读多写少：按模板ID缓存实体，另缓存一份全部模板列表；本节点修改模板时直接失效，
+ * 其他节点通过 TemplateChangeListener 收到 Postgres NOTIFY 后失效。ttl 作为通知丢失时的兜底。
+ * 返回的都是副本，调用方修改不会影响缓存。
+ */
+@Slf4j
+@Component
+public class TemplateMetadataCache {
+
+    @Value("${report.cache.template-meta.enabled:true}")
+    private boolean enabled;
+
+    @Value("${report.cache.template-meta.ttl:300}")
+    private long ttlSeconds;
+
+    @Value("${report.cache.template-meta.max-entries:1024}")
+    private int maxEntries;
+
+    private final ConcurrentHashMap<Long, Entry<ReportTemplate>> entries = new ConcurrentHashMap<>();
+    private volatile Entry<List<ReportTemplate>> allTemplates;
+
+    /**
+     * 失效版本号：加载前记录，加载期间发生失效则结果不写入缓存，避免把旧数据放回去
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static class Entry<T> {
+        private final T value;
+        private final long expireAt;
+
+        Entry(T value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
+
+    public ReportTemplate get(Long templateId, Supplier<ReportTemplate> loader) {
+        if (!enabled || templateId == null) {
+            return loader.get();
+        }
+        Entry<ReportTemplate> entry = entries.get(templateId);
+        if (entry != null && !entry.expired()) {
+            hits.incrementAndGet();
+            return copy(entry.value);
+        }
+        misses.incrementAndGet();
+
+        long loadVersion = version.get();
+        ReportTemplate template = loader.get();
+        if (template != null && version.get() == loadVersion) {
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+            entries.put(templateId, new Entry<>(copy(template), expireAt()));
+        }
+        return template;
+    }
+
+    public List<ReportTemplate> getAll(Supplier<List<ReportTemplate>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry<List<ReportTemplate>> entry = allTemplates;
+        if (entry != null && !entry.expired()) {
+            hits.incrementAndGet();
+            return copyAll(entry.value);
+        }
+        misses.incrementAndGet();
+
+        long loadVersion = version.get();
+        List<ReportTemplate> templates = loader.get();
+        if (version.get() == loadVersion) {
+            allTemplates = new Entry<>(copyAll(templates), expireAt());
+        }
+        return templates;
+    }
+
+    public void invalidate(Long templateId) {
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+        if (templateId != null) {
+            entries.remove(templateId);
+        }
+        allTemplates = null;
+        log.debug("模板元数据缓存失效: {}", templateId);
+    }
+
+    public void clear() {
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+        entries.clear();
+        allTemplates = null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("listCached", allTemplates != null);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("invalidations", invalidations.get());
+        long total = hits.get() + misses.get();
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits.get() / total);
+        return stats;
+    }
+
+    private long expireAt() {
+        return ttlSeconds > 0 ? System.currentTimeMillis() + ttlSeconds * 1000 : Long.MAX_VALUE;
+    }
+
+    private static ReportTemplate copy(ReportTemplate source) {
+        ReportTemplate target = new ReportTemplate();
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+
+    private static List<ReportTemplate> copyAll(List<ReportTemplate> source) {
+        List<ReportTemplate> result = new ArrayList<>(source.size());
+        for (ReportTemplate template : source) {
+            result.add(copy(template));
+        }
+        return result;
+    }
+}
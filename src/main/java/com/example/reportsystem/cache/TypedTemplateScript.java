@@ -0,0 +1,33 @@
+package com.example.reportsystem.cache;
+
+import com.deepoove.poi.config.ConfigureBuilder;
+import com.example.reportsystem.util.ScriptLogger;
+import groovy.lang.Script;
+
+import java.util.Map;
+
+/**
+ * 静态编译模式下模板脚本的基类
+ * 为 data、params、config、log 提供带类型的访问方法，@CompileStatic 下脚本可以直接写 data.put(...)、log.info(...)，
+ * 类型错误在模板保存时的编译阶段即可发现。
+ */
+public abstract class TypedTemplateScript extends Script {
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getData() {
+        return (Map<String, Object>) getBinding().getVariable("data");
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getParams() {
+        return (Map<String, Object>) getBinding().getVariable("params");
+    }
+
+    public ConfigureBuilder getConfig() {
+        return (ConfigureBuilder) getBinding().getVariable("config");
+    }
+
+    public ScriptLogger getLog() {
+        return (ScriptLogger) getBinding().getVariable("log");
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.reportsystem.config;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享 HTTP 客户端配置
+ * MinIO 和数据接口调用共用同一个连接池和 Dispatcher，各自使用独立的超时配置。
+ */
+@Slf4j
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "http-client")
+public class HttpClientConfig {
+
+    private int maxIdleConnections = 50;
+    private long keepAliveDuration = 300000;
+    private int maxRequests = 128;
+    private int maxRequestsPerHost = 32;
+    private Timeouts minio = new Timeouts();
+    private Timeouts dataSource = new Timeouts();
+
+    @Data
+    public static class Timeouts {
+        private long connectTimeout = 10000;
+        private long readTimeout = 30000;
+        private long writeTimeout = 30000;
+        private boolean trustAllCertificates = false;
+    }
+
+    @Bean
+    public ConnectionPool httpConnectionPool() {
+        return new ConnectionPool(maxIdleConnections, keepAliveDuration, TimeUnit.MILLISECONDS);
+    }
+
+    @Bean
+    public Dispatcher httpDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    @Bean
+    public OkHttpClient minioHttpClient(ConnectionPool httpConnectionPool, Dispatcher httpDispatcher) {
+        return buildClient(httpConnectionPool, httpDispatcher, minio);
+    }
+
+    @Bean
+    public OkHttpClient dataSourceHttpClient(@Qualifier("httpConnectionPool") ConnectionPool httpConnectionPool,
+                                             @Qualifier("httpDispatcher") Dispatcher httpDispatcher) {
+        return buildClient(httpConnectionPool, httpDispatcher, dataSource);
+    }
+
+    private OkHttpClient buildClient(ConnectionPool connectionPool, Dispatcher dispatcher, Timeouts timeouts) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(timeouts.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(timeouts.getReadTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(timeouts.getWriteTimeout(), TimeUnit.MILLISECONDS);
+
+        if (timeouts.isTrustAllCertificates()) {
+            try {
+                // 信任所有证书
+                X509TrustManager trustAllManager = new X509TrustManager() {
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[]{};
+                    }
+                    public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                    }
+                    public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                    }
+                };
+                SSLContext sslContext = SSLContext.getInstance("SSL");
+                sslContext.init(null, new TrustManager[]{trustAllManager}, new SecureRandom());
+                builder.sslSocketFactory(sslContext.getSocketFactory(), trustAllManager)
+                        .hostnameVerifier((hostname, session) -> true);
+            } catch (Exception e) {
+                log.error("初始化HTTP客户端SSL配置失败", e);
+            }
+        }
+        return builder.build();
+    }
+}
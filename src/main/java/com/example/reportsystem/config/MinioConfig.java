@@ -2,6 +2,8 @@ package com.example.reportsystem.config;
 
 import io.minio.MinioClient;
 import lombok.Data;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -18,10 +20,11 @@ public class MinioConfig {
     private String templateBucketName;
 
     @Bean
-    public MinioClient minioClient() {
+    public MinioClient minioClient(@Qualifier("minioHttpClient") OkHttpClient minioHttpClient) {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
+                .httpClient(minioHttpClient)
                 .build();
     }
 }
@@ -1,11 +1,11 @@
 package com.example.reportsystem.controller;
 
-import com.example.reportsystem.service.ReportGenerationService;
-import com.example.reportsystem.service.ReportTemplateService;
+import com.example.reportsystem.metrics.GenerationStatistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -14,22 +14,20 @@ import java.util.Map;
 public class DashboardController {
 
     @Autowired
-    private ReportTemplateService templateService;
-
-    @Autowired
-    private ReportGenerationService generationService;
+    private GenerationStatistics generationStatistics;
 
     @GetMapping("/dashboard")
     public String dashboard(Model model) {
-        Map<String, Object> stats = new HashMap<>();
-
-        int templateCount = Math.toIntExact(templateService.count());
-        int generationCount = Math.toIntExact(generationService.count());
-
-        stats.put("templateCount", templateCount);
-        stats.put("generationCount", generationCount);
-
-        model.addAttribute("stats", stats);
+        model.addAttribute("stats", generationStatistics.getDashboard());
         return "dashboard";
     }
+
+    @GetMapping("/dashboard/api/stats")
+    @ResponseBody
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationStatistics.getDashboard());
+        return result;
+    }
 }
@@ -3,20 +3,23 @@ package com.example.reportsystem.controller;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.example.reportsystem.entity.ReportGeneration;
 import com.example.reportsystem.entity.ReportTemplate;
+import com.example.reportsystem.job.GenerationEventBroadcaster;
+import com.example.reportsystem.job.GenerationRejectedException;
 import com.example.reportsystem.service.ReportGenerationService;
 import com.example.reportsystem.service.ReportTemplateService;
+import com.example.reportsystem.util.RangeDownloadUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.InputStream;
-import java.net.URLEncoder;
+import javax.servlet.http.HttpServletResponse;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,13 +35,18 @@ public class GenerationController {
     @Autowired
     private ReportTemplateService templateService;
 
+    @Autowired
+    private GenerationEventBroadcaster generationEventBroadcaster;
+
     @GetMapping("/list")
-    public String list(@RequestParam(defaultValue = "1") Integer pageNum,
+    public String list(@RequestParam(required = false) String cursor,
                        @RequestParam(defaultValue = "10") Integer pageSize,
                        @RequestParam(required = false) Long templateId,
                        Model model) {
-        Page<ReportGeneration> page = generationService.getGenerationList(pageNum, pageSize, templateId);
+        Map<String, Object> page = generationService.getGenerationListByCursor(templateId, cursor, pageSize, "approx");
         model.addAttribute("page", page);
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("pageSize", pageSize);
         model.addAttribute("templateId", templateId);
         return "generation/list";
     }
@@ -53,17 +61,29 @@ public class GenerationController {
     @PostMapping("/generate")
     @ResponseBody
     public Map<String, Object> generate(@RequestParam Long templateId,
+                                       @RequestParam(defaultValue = "false") boolean async,
                                        @RequestBody Map<String, Object> params,
-                                       HttpServletRequest request) {
+                                       HttpServletRequest request,
+                                       HttpServletResponse response) {
         Map<String, Object> result = new HashMap<>();
         try {
             String createdBy = request.getRemoteUser();
             if (createdBy == null) createdBy = "admin";
 
+            if (async) {
+                ReportGeneration generation = generationService.submitReport(templateId, params, createdBy);
+                result.put("success", true);
+                result.put("message", "已提交生成任务");
+                result.put("data", generation);
+                return result;
+            }
+
             ReportGeneration generation = generationService.generateReport(templateId, params, createdBy);
             result.put("success", true);
             result.put("message", "生成成功");
             result.put("data", generation);
+        } catch (GenerationRejectedException e) {
+            reject(response, result, e);
         } catch (Exception e) {
             log.error("生成失败", e);
             result.put("success", false);
@@ -72,22 +92,61 @@ public class GenerationController {
         return result;
     }
 
-    @GetMapping("/download/{id}")
-    public ResponseEntity<byte[]> download(@PathVariable Long id) {
+    @PostMapping("/batch")
+    @ResponseBody
+    public Map<String, Object> batch(@RequestParam Long templateId,
+                                     @RequestParam(required = false) Integer concurrency,
+                                     @RequestBody List<Map<String, Object>> paramsList,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) {
+        Map<String, Object> result = new HashMap<>();
         try {
-            ReportGeneration generation = generationService.getGenerationById(id);
-            InputStream inputStream = generationService.downloadReport(id);
-            byte[] bytes = org.apache.commons.io.IOUtils.toByteArray(inputStream);
+            String createdBy = request.getRemoteUser();
+            if (createdBy == null) createdBy = "admin";
+
+            List<Map<String, Object>> items = generationService.generateBatch(templateId, paramsList, concurrency, createdBy);
+            long successCount = items.stream().filter(item -> Boolean.TRUE.equals(item.get("success"))).count();
+            result.put("success", true);
+            result.put("message", "批量生成完成，成功 " + successCount + " 个，失败 " + (items.size() - successCount) + " 个");
+            result.put("data", items);
+        } catch (GenerationRejectedException e) {
+            reject(response, result, e);
+        } catch (Exception e) {
+            log.error("批量生成失败", e);
+            result.put("success", false);
+            result.put("message", "批量生成失败: " + e.getMessage());
+        }
+        return result;
+    }
 
-            String filename = URLEncoder.encode(generation.getFileName(), "UTF-8");
+    /**
+     * 限流或排队已满：返回 429 和 Retry-After（秒）
+     */
+    private void reject(HttpServletResponse response, Map<String, Object> result, GenerationRejectedException e) {
+        log.warn("生成请求被拒绝（{}）: {}", e.getReason(), e.getMessage());
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        result.put("success", false);
+        result.put("message", e.getMessage());
+        result.put("retryAfter", e.getRetryAfterSeconds());
+    }
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(bytes);
+    @GetMapping("/download/{id}")
+    public void download(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            ReportGeneration generation = generationService.getGenerationById(id);
+            if (generation == null) {
+                throw new RuntimeException("生成记录不存在");
+            }
+            long totalLength = generationService.getReportSize(generation);
+            RangeDownloadUtils.write(request, response, generation.getFileName(), totalLength,
+                    (offset, length) -> generationService.downloadReport(id, offset, length));
         } catch (Exception e) {
             log.error("下载失败", e);
-            return ResponseEntity.notFound().build();
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
         }
     }
 
@@ -106,13 +165,29 @@ public class GenerationController {
         return result;
     }
 
+    /**
+     * 生成记录列表（摘要字段）。传 pageNum 时按页码分页（兼容旧调用）；
+     * 否则按游标分页，首页不传 cursor，之后传上一页返回的 nextCursor；count：exact / approx / none
+     */
     @GetMapping("/api/list")
     @ResponseBody
-    public Map<String, Object> apiList(@RequestParam(defaultValue = "1") Integer pageNum,
+    public Map<String, Object> apiList(@RequestParam(required = false) Integer pageNum,
                                        @RequestParam(defaultValue = "10") Integer pageSize,
-                                       @RequestParam(required = false) Long templateId) {
+                                       @RequestParam(required = false) Long templateId,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "approx") String count) {
         Map<String, Object> result = new HashMap<>();
         try {
+            if (pageNum == null) {
+                Map<String, Object> page = generationService.getGenerationListByCursor(templateId, cursor, pageSize, count);
+                result.put("success", true);
+                result.put("data", page.get("records"));
+                result.put("total", page.get("total"));
+                result.put("totalApproximate", page.get("totalApproximate"));
+                result.put("hasMore", page.get("hasMore"));
+                result.put("nextCursor", page.get("nextCursor"));
+                return result;
+            }
             Page<ReportGeneration> page = generationService.getGenerationList(pageNum, pageSize, templateId);
             result.put("success", true);
             result.put("data", page.getRecords());
@@ -139,12 +214,63 @@ public class GenerationController {
         return result;
     }
 
+    @GetMapping("/api/{id}/status")
+    @ResponseBody
+    public Map<String, Object> apiStatus(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            ReportGeneration generation = generationService.getGenerationById(id);
+            if (generation == null) {
+                throw new RuntimeException("生成记录不存在");
+            }
+            Map<String, Object> status = new HashMap<>();
+            status.put("id", generation.getId());
+            status.put("status", generation.getStatus());
+            status.put("stage", generation.getStage());
+            status.put("progress", generation.getProgress());
+            status.put("errorMessage", generation.getErrorMessage());
+            result.put("success", true);
+            result.put("data", status);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 生成进度和脚本日志的实时推送（SSE），事件：stage、log、dropped、done、failed
+     */
+    @GetMapping(value = "/api/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter events(@PathVariable Long id) {
+        ReportGeneration generation = generationService.getGenerationById(id);
+        if (generation == null) {
+            throw new RuntimeException("生成记录不存在");
+        }
+        return generationEventBroadcaster.subscribe(generation);
+    }
+
+    @GetMapping("/api/{id}/log")
+    @ResponseBody
+    public Map<String, Object> apiLog(@PathVariable Long id) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("success", true);
+            result.put("data", generationService.getExecutionLog(id));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
     @GetMapping("/api/templates")
     @ResponseBody
     public Map<String, Object> apiTemplates() {
         Map<String, Object> result = new HashMap<>();
         try {
-            List<ReportTemplate> templates = templateService.list();
+            List<ReportTemplate> templates = templateService.listTemplates();
             result.put("success", true);
             result.put("data", templates);
         } catch (Exception e) {
@@ -0,0 +1,192 @@
+package com.example.reportsystem.controller;
+
+import com.example.reportsystem.cache.DataSourceCache;
+import com.example.reportsystem.cache.GroovyScriptCache;
+import com.example.reportsystem.cache.TemplateChangeListener;
+import com.example.reportsystem.cache.TemplateFileCache;
+import com.example.reportsystem.cache.TemplateMetadataCache;
+import com.example.reportsystem.job.GenerationArchiver;
+import com.example.reportsystem.job.GenerationEventBroadcaster;
+import com.example.reportsystem.job.GenerationJobExecutor;
+import com.example.reportsystem.job.GenerationRetentionJob;
+import com.example.reportsystem.job.GenerationScheduler;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/monitor")
+public class MonitorController {
+
+    @Autowired
+    private TemplateFileCache templateFileCache;
+
+    @Autowired
+    private GroovyScriptCache groovyScriptCache;
+
+    @Autowired
+    private TemplateMetadataCache templateMetadataCache;
+
+    @Autowired
+    private TemplateChangeListener templateChangeListener;
+
+    @Autowired
+    private DataSourceCache dataSourceCache;
+
+    @Autowired
+    private GenerationJobExecutor generationJobExecutor;
+
+    @Autowired
+    private GenerationEventBroadcaster generationEventBroadcaster;
+
+    @Autowired
+    private GenerationScheduler generationScheduler;
+
+    @Autowired
+    private GenerationArchiver generationArchiver;
+
+    @Autowired
+    private GenerationRetentionJob generationRetentionJob;
+
+    @Autowired
+    private ConnectionPool httpConnectionPool;
+
+    @Autowired
+    private Dispatcher httpDispatcher;
+
+    @GetMapping("/template-cache")
+    public Map<String, Object> templateCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", templateFileCache.getStats());
+        return result;
+    }
+
+    @GetMapping("/template-meta-cache")
+    public Map<String, Object> templateMetaCache() {
+        Map<String, Object> stats = new LinkedHashMap<>(templateMetadataCache.getStats());
+        stats.put("listener", templateChangeListener.getStats());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", stats);
+        return result;
+    }
+
+    @GetMapping("/script-cache")
+    public Map<String, Object> scriptCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", groovyScriptCache.getStats());
+        return result;
+    }
+
+    @GetMapping("/data-source-cache")
+    public Map<String, Object> dataSourceCache() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", dataSourceCache.getStats());
+        return result;
+    }
+
+    @GetMapping("/generation-queue")
+    public Map<String, Object> generationQueue() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationJobExecutor.getStats());
+        return result;
+    }
+
+    @GetMapping("/generation-scheduler")
+    public Map<String, Object> generationScheduler() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationScheduler.getStats());
+        return result;
+    }
+
+    @GetMapping("/retention")
+    public Map<String, Object> retention() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationRetentionJob.getStats());
+        return result;
+    }
+
+    /**
+     * 立即执行一次保留策略清理（不受 report.retention.enabled 影响）
+     */
+    @PostMapping("/retention/run")
+    public Map<String, Object> runRetention() {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            Map<String, Object> report = generationRetentionJob.run();
+            result.put("success", report != null);
+            result.put("message", report != null ? "清理完成" : "已有清理任务在执行");
+            result.put("data", report);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    @GetMapping("/archive")
+    public Map<String, Object> archive() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationArchiver.getStats());
+        return result;
+    }
+
+    /**
+     * 立即执行一次生成记录归档（不受 report.archive.enabled 影响）
+     */
+    @PostMapping("/archive/run")
+    public Map<String, Object> runArchive() {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            Map<String, Object> report = generationArchiver.run();
+            result.put("success", report != null);
+            result.put("message", report != null ? "归档完成" : "已有归档任务在执行");
+            result.put("data", report);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    @GetMapping("/generation-events")
+    public Map<String, Object> generationEvents() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", generationEventBroadcaster.getStats());
+        return result;
+    }
+
+    @GetMapping("/http-pool")
+    public Map<String, Object> httpPool() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connectionCount", httpConnectionPool.connectionCount());
+        stats.put("idleConnectionCount", httpConnectionPool.idleConnectionCount());
+        stats.put("activeConnectionCount", httpConnectionPool.connectionCount() - httpConnectionPool.idleConnectionCount());
+        stats.put("runningCallsCount", httpDispatcher.runningCallsCount());
+        stats.put("queuedCallsCount", httpDispatcher.queuedCallsCount());
+        stats.put("maxRequests", httpDispatcher.getMaxRequests());
+        stats.put("maxRequestsPerHost", httpDispatcher.getMaxRequestsPerHost());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", stats);
+        return result;
+    }
+}
@@ -1,21 +1,19 @@
 package com.example.reportsystem.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.reportsystem.dto.TemplateOptions;
 import com.example.reportsystem.entity.ReportTemplate;
 import com.example.reportsystem.service.ReportTemplateService;
+import com.example.reportsystem.util.RangeDownloadUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.InputStream;
-import java.net.URLEncoder;
+import javax.servlet.http.HttpServletResponse;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -51,13 +49,14 @@ public class TemplateController {
                                    @RequestParam(required = false) String description,
                                    @RequestParam(required = false) String apiUrl,
                                    @RequestParam(required = false) String groovyScriptContent,
+                                   @ModelAttribute("options") TemplateOptions options,
                                    HttpServletRequest request) {
         Map<String, Object> result = new HashMap<>();
         try {
             String createdBy = request.getRemoteUser();
             if (createdBy == null) createdBy = "admin";
 
-            ReportTemplate template = templateService.uploadTemplate(file, name, description, apiUrl, groovyScriptContent, createdBy);
+            ReportTemplate template = templateService.uploadTemplate(file, name, description, apiUrl, groovyScriptContent, createdBy, options);
             result.put("success", true);
             result.put("message", "上传成功");
             result.put("data", template);
@@ -97,10 +96,11 @@ public class TemplateController {
                                        @RequestParam String name,
                                        @RequestParam(required = false) String description,
                                        @RequestParam(required = false) String apiUrl,
-                                       @RequestParam(required = false) String groovyScriptContent) {
+                                       @RequestParam(required = false) String groovyScriptContent,
+                                       @ModelAttribute("options") TemplateOptions options) {
         Map<String, Object> result = new HashMap<>();
         try {
-            ReportTemplate template = templateService.updateTemplate(id, name, description, apiUrl, groovyScriptContent);
+            ReportTemplate template = templateService.updateTemplate(id, name, description, apiUrl, groovyScriptContent, options);
             if (file != null) {
                 templateService.updateTemplateFile(id, file);
             }
@@ -147,21 +147,21 @@ public class TemplateController {
     }
 
     @GetMapping("/download/{id}")
-    public ResponseEntity<byte[]> download(@PathVariable Long id) {
+    public void download(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) {
         try {
             ReportTemplate template = templateService.getTemplateById(id);
-            InputStream inputStream = templateService.downloadTemplate(id);
-            byte[] bytes = org.apache.commons.io.IOUtils.toByteArray(inputStream);
-
-            String filename = URLEncoder.encode(template.getFileName(), "UTF-8");
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(bytes);
+            if (template == null) {
+                throw new RuntimeException("模板不存在");
+            }
+            long totalLength = templateService.getTemplateFileSize(template);
+            RangeDownloadUtils.write(request, response, template.getFileName(), totalLength,
+                    (offset, length) -> templateService.downloadTemplate(id, offset, length));
         } catch (Exception e) {
             log.error("下载失败", e);
-            return ResponseEntity.notFound().build();
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
         }
     }
 
@@ -0,0 +1,284 @@
+package com.example.reportsystem.datasource;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * 紧凑行列表
+ * 大数组中的每个对象只保存一个 Object[]，列名整张表共享一份，读取时以只读 Map 视图返回，
+ * 避免为每一行保留一个 HashMap。构建完成后列表只读，可以在多个生成任务之间共享；
+ * 每个生成任务通过 {@link #mutableView()} 获得可修改的视图，修改只对该任务可见。
+ */
+public class CompactRowList extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+    private static final Object ABSENT = new Object();
+
+    private final List<String> columns = new ArrayList<>();
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final List<Object[]> rows = new ArrayList<>();
+
+    void append(Map<?, ?> row) {
+        Object[] values = new Object[columns.size()];
+        Arrays.fill(values, ABSENT);
+        for (Map.Entry<?, ?> entry : row.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Integer index = columnIndex.get(key);
+            if (index == null) {
+                index = columns.size();
+                columns.add(key);
+                columnIndex.put(key, index);
+            }
+            if (index >= values.length) {
+                int oldLength = values.length;
+                values = Arrays.copyOf(values, columns.size());
+                Arrays.fill(values, oldLength, values.length, ABSENT);
+            }
+            values[index] = entry.getValue();
+        }
+        rows.add(values);
+    }
+
+    void trimToSize() {
+        ((ArrayList<Object[]>) rows).trimToSize();
+    }
+
+    public List<String> getColumns() {
+        return java.util.Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * 单个生成任务使用的可修改视图（写时复制）：行第一次被修改时复制为 LinkedHashMap，
+     * 列表结构被修改（增删、排序）时复制一份行引用列表，共享的紧凑数据不变
+     */
+    public List<Map<String, Object>> mutableView() {
+        return new MutableView();
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        return new RowView(rows.get(index));
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    private class RowView extends AbstractMap<String, Object> {
+        private final Object[] values;
+
+        RowView(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = columnIndex.get(key);
+            if (index == null || index >= values.length || values[index] == ABSENT) {
+                return null;
+            }
+            return values[index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Integer index = columnIndex.get(key);
+            return index != null && index < values.length && values[index] != ABSENT;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            int i = from;
+                            while (i < values.length && values[i] == ABSENT) {
+                                i++;
+                            }
+                            return i;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < values.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = next;
+                            next = advance(current + 1);
+                            return new SimpleImmutableEntry<>(columns.get(current), values[current]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    for (Object value : values) {
+                        if (value != ABSENT) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+    }
+
+    private class MutableView extends AbstractList<Map<String, Object>> implements RandomAccess {
+        /**
+         * 已修改的行，按原始行号保存
+         */
+        private final Map<Integer, Map<String, Object>> copies = new HashMap<>();
+        /**
+         * 结构被修改后的行列表，未修改结构时为 null
+         */
+        private List<Map<String, Object>> materialized;
+
+        @Override
+        public Map<String, Object> get(int index) {
+            if (materialized != null) {
+                return materialized.get(index);
+            }
+            Map<String, Object> copy = copies.get(index);
+            return copy != null ? copy : new CopyOnWriteRow(index);
+        }
+
+        @Override
+        public int size() {
+            return materialized != null ? materialized.size() : rows.size();
+        }
+
+        @Override
+        public Map<String, Object> set(int index, Map<String, Object> element) {
+            return materialize().set(index, element);
+        }
+
+        @Override
+        public void add(int index, Map<String, Object> element) {
+            materialize().add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public Map<String, Object> remove(int index) {
+            Map<String, Object> removed = materialize().remove(index);
+            modCount++;
+            return removed;
+        }
+
+        private List<Map<String, Object>> materialize() {
+            if (materialized == null) {
+                List<Map<String, Object>> list = new ArrayList<>(rows.size() + 16);
+                for (int i = 0; i < rows.size(); i++) {
+                    list.add(get(i));
+                }
+                materialized = list;
+            }
+            return materialized;
+        }
+
+        private class CopyOnWriteRow extends AbstractMap<String, Object> {
+            private final int rowIndex;
+
+            CopyOnWriteRow(int rowIndex) {
+                this.rowIndex = rowIndex;
+            }
+
+            private Map<String, Object> target() {
+                Map<String, Object> copy = copies.get(rowIndex);
+                return copy != null ? copy : new RowView(rows.get(rowIndex));
+            }
+
+            private Map<String, Object> copy() {
+                return copies.computeIfAbsent(rowIndex, i -> new LinkedHashMap<>(new RowView(rows.get(i))));
+            }
+
+            @Override
+            public Object get(Object key) {
+                return target().get(key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return target().containsKey(key);
+            }
+
+            @Override
+            public Object put(String key, Object value) {
+                return copy().put(key, value);
+            }
+
+            @Override
+            public Object remove(Object key) {
+                return copy().remove(key);
+            }
+
+            @Override
+            public void clear() {
+                copy().clear();
+            }
+
+            /**
+             * 条目的 setValue 通过 put 写入（触发复制），支持脚本中 row.each { it.value = ... } 的写法
+             */
+            @Override
+            public Set<Map.Entry<String, Object>> entrySet() {
+                Set<Map.Entry<String, Object>> entries = target().entrySet();
+                return new AbstractSet<Map.Entry<String, Object>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, Object>> iterator() {
+                        Iterator<Map.Entry<String, Object>> iterator = entries.iterator();
+                        return new Iterator<Map.Entry<String, Object>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<String, Object> next() {
+                                return new WriteThroughEntry(iterator.next());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return entries.size();
+                    }
+                };
+            }
+
+            private class WriteThroughEntry extends SimpleEntry<String, Object> {
+                WriteThroughEntry(Map.Entry<String, Object> entry) {
+                    super(entry);
+                }
+
+                @Override
+                public Object setValue(Object value) {
+                    put(getKey(), value);
+                    return super.setValue(value);
+                }
+            }
+        }
+    }
+}
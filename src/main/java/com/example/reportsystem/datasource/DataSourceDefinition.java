@@ -0,0 +1,57 @@
+package com.example.reportsystem.datasource;
+
+import com.alibaba.fastjson.JSON;
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 模板声明的命名数据源
+ * 以 JSON 数组保存在 report_template.data_sources 中，例如：
+ * [{"name":"sales","url":"http://api/sales","params":{"month":"$month","type":"daily"},"timeout":5000}]
+ * params 中以 $ 开头的值取自用户请求参数，其余为常量；未配置 params 时原样传递全部请求参数。
+ */
+@Data
+public class DataSourceDefinition {
+
+    private String name;
+
+    private String url;
+
+    private Map<String, String> params;
+
+    private Integer timeout;
+
+    public static List<DataSourceDefinition> parse(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DataSourceDefinition> definitions;
+        try {
+            definitions = JSON.parseArray(json, DataSourceDefinition.class);
+        } catch (Exception e) {
+            throw new RuntimeException("数据源配置格式错误: " + e.getMessage());
+        }
+        if (definitions == null) {
+            return Collections.emptyList();
+        }
+
+        Set<String> names = new HashSet<>();
+        for (DataSourceDefinition definition : definitions) {
+            if (definition.getName() == null || definition.getName().trim().isEmpty()) {
+                throw new RuntimeException("数据源配置格式错误: 名称不能为空");
+            }
+            if (definition.getUrl() == null || definition.getUrl().trim().isEmpty()) {
+                throw new RuntimeException("数据源配置格式错误: 数据源 [" + definition.getName() + "] 未配置 url");
+            }
+            if (!names.add(definition.getName())) {
+                throw new RuntimeException("数据源配置格式错误: 名称重复 [" + definition.getName() + "]");
+            }
+        }
+        return definitions;
+    }
+}
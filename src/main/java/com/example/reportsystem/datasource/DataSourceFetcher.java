@@ -0,0 +1,126 @@
+package com.example.reportsystem.datasource;
+
+import com.example.reportsystem.cache.DataSourceCache;
+import com.example.reportsystem.entity.ReportTemplate;
+import com.example.reportsystem.util.ScriptLogger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多数据源并行获取
+ * 模板声明的各数据源同时发起请求，全部返回或超时后按名称合并，总耗时取决于最慢的数据源而不是所有数据源之和。
+ */
+@Slf4j
+@Component
+public class DataSourceFetcher {
+
+    @Autowired
+    private DataSourceCache dataSourceCache;
+
+    @Value("${report.datasource.fetch-pool-size:16}")
+    private int fetchPoolSize;
+
+    @Value("${report.datasource.default-timeout:30000}")
+    private int defaultTimeout;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(fetchPoolSize, new CustomizableThreadFactory("report-datasource-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 异步发起模板声明的全部数据源请求，调用方在需要数据时调用 {@link PendingFetch#await}
+     */
+    public PendingFetch fetchAsync(ReportTemplate template, Map<String, Object> params, ScriptLogger scriptLogger) {
+        List<DataSourceDefinition> definitions = DataSourceDefinition.parse(template.getDataSources());
+        Map<String, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+        for (DataSourceDefinition definition : definitions) {
+            int timeout = definition.getTimeout() != null ? definition.getTimeout() : defaultTimeout;
+            Map<String, Object> sourceParams = mapParams(definition, params);
+            scriptLogger.info("并行获取数据源 [" + definition.getName() + "]: " + definition.getUrl());
+
+            CompletableFuture<Object> future = CompletableFuture
+                    .supplyAsync(() -> dataSourceCache.fetch(template.getId(), definition.getUrl(), sourceParams,
+                            template.getApiCacheTtl(), timeout), executor)
+                    .orTimeout(timeout, TimeUnit.MILLISECONDS);
+            futures.put(definition.getName(), future);
+        }
+        return new PendingFetch(futures, scriptLogger);
+    }
+
+    private Map<String, Object> mapParams(DataSourceDefinition definition, Map<String, Object> params) {
+        if (definition.getParams() == null) {
+            return params != null ? params : new HashMap<>();
+        }
+        Map<String, Object> mapped = new HashMap<>();
+        definition.getParams().forEach((key, value) -> {
+            if (value != null && value.startsWith("$")) {
+                Object paramValue = params != null ? params.get(value.substring(1)) : null;
+                if (paramValue != null) {
+                    mapped.put(key, paramValue);
+                }
+            } else {
+                mapped.put(key, value);
+            }
+        });
+        return mapped;
+    }
+
+    public static class PendingFetch {
+        private final Map<String, CompletableFuture<Object>> futures;
+        private final ScriptLogger scriptLogger;
+
+        PendingFetch(Map<String, CompletableFuture<Object>> futures, ScriptLogger scriptLogger) {
+            this.futures = futures;
+            this.scriptLogger = scriptLogger;
+        }
+
+        public boolean isEmpty() {
+            return futures.isEmpty();
+        }
+
+        /**
+         * 等待全部数据源返回或超时，返回 名称 -> 数据；失败或超时的数据源记录日志后跳过
+         */
+        public Map<String, Object> await() {
+            Map<String, Object> results = new LinkedHashMap<>();
+            futures.forEach((name, future) -> {
+                try {
+                    results.put(name, future.join());
+                    scriptLogger.info("数据源 [" + name + "] 获取成功");
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        scriptLogger.warn("数据源 [" + name + "] 获取超时，已跳过");
+                    } else {
+                        scriptLogger.error("数据源 [" + name + "] 获取失败: " + cause.getMessage(), cause);
+                    }
+                }
+            });
+            return results;
+        }
+    }
+}
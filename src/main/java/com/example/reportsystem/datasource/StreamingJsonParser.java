@@ -0,0 +1,139 @@
+package com.example.reportsystem.datasource;
+
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.parser.JSONToken;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 大报文流式 JSON 解析
+ * 直接从响应流读取，不生成完整的报文字符串：顶层对象中的数组（或顶层数组）逐行读入 {@link CompactRowList}，
+ * 其余字段按普通 JSON 读取。读取字节数超过 maxBytes 时立即中止。
+ */
+public final class StreamingJsonParser {
+
+    private StreamingJsonParser() {
+    }
+
+    public static class Result {
+        private final Object data;
+        private final long bytes;
+        private final long rows;
+        private final long parseMillis;
+
+        Result(Object data, long bytes, long rows, long parseMillis) {
+            this.data = data;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.parseMillis = parseMillis;
+        }
+
+        public Object getData() {
+            return data;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getParseMillis() {
+            return parseMillis;
+        }
+    }
+
+    public static Result parse(InputStream inputStream, Charset charset, long maxBytes) throws IOException {
+        long start = System.currentTimeMillis();
+        LimitedCountingInputStream countingStream = new LimitedCountingInputStream(inputStream, maxBytes);
+        long[] rowCount = new long[1];
+        Object data;
+
+        try (JSONReader reader = new JSONReader(new InputStreamReader(countingStream, charset))) {
+            if (reader.peek() == JSONToken.LBRACKET) {
+                data = readArray(reader, rowCount);
+            } else {
+                Map<String, Object> map = new LinkedHashMap<>();
+                reader.startObject();
+                while (reader.hasNext()) {
+                    String key = reader.readString();
+                    if (reader.peek() == JSONToken.LBRACKET) {
+                        map.put(key, readArray(reader, rowCount));
+                    } else {
+                        map.put(key, reader.readObject());
+                    }
+                }
+                reader.endObject();
+                data = map;
+            }
+        }
+        return new Result(data, countingStream.getByteCount(), rowCount[0], System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 包装输入流，读取字节数超过 maxBytes（大于 0 时）抛出 {@link PayloadTooLargeException}
+     */
+    public static InputStream limit(InputStream inputStream, long maxBytes) {
+        return new LimitedCountingInputStream(inputStream, maxBytes);
+    }
+
+    private static List<?> readArray(JSONReader reader, long[] rowCount) {
+        CompactRowList compact = new CompactRowList();
+        List<Object> plain = null;
+
+        reader.startArray();
+        while (reader.hasNext()) {
+            Object item = reader.readObject();
+            rowCount[0]++;
+            if (plain == null && item instanceof Map) {
+                compact.append((Map<?, ?>) item);
+            } else {
+                // 非对象元素（或对象与其他类型混合）的数组按普通列表保存
+                if (plain == null) {
+                    plain = new ArrayList<>(compact);
+                }
+                plain.add(item);
+            }
+        }
+        reader.endArray();
+
+        if (plain != null) {
+            return plain;
+        }
+        compact.trimToSize();
+        return compact;
+    }
+
+    private static class LimitedCountingInputStream extends CountingInputStream {
+        private final long maxBytes;
+
+        LimitedCountingInputStream(InputStream inputStream, long maxBytes) {
+            super(inputStream);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        protected synchronized void afterRead(int n) {
+            super.afterRead(n);
+            if (maxBytes > 0 && getByteCount() > maxBytes) {
+                throw new PayloadTooLargeException("接口返回数据超过上限: " + maxBytes + " 字节");
+            }
+        }
+    }
+
+    public static class PayloadTooLargeException extends RuntimeException {
+        public PayloadTooLargeException(String message) {
+            super(message);
+        }
+    }
+}
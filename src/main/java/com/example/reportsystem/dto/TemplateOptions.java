@@ -0,0 +1,24 @@
+package com.example.reportsystem.dto;
+
+import lombok.Data;
+
+/**
+ * 模板表单中的可选配置项（上传、更新模板时从请求参数绑定），只包含允许用户设置的字段
+ */
+@Data
+public class TemplateOptions {
+
+    private Integer apiCacheTtl;
+
+    private String dataSources;
+
+    private Integer scriptTimeout;
+
+    private Boolean scriptStatic;
+
+    private Integer maxConcurrency;
+
+    private Integer retentionDays;
+
+    private Integer retentionMaxCount;
+}
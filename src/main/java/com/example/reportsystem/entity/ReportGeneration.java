@@ -9,6 +9,18 @@ import java.time.LocalDateTime;
 @TableName("report_generation")
 public class ReportGeneration {
 
+    public static final String STAGE_QUEUED = "QUEUED";
+    /**
+     * 同步、批量生成的记录创建时即由本节点执行，不进入队列
+     */
+    public static final String STAGE_STARTING = "STARTING";
+    public static final String STAGE_FETCHING = "FETCHING";
+    public static final String STAGE_SCRIPTING = "SCRIPTING";
+    public static final String STAGE_RENDERING = "RENDERING";
+    public static final String STAGE_UPLOADING = "UPLOADING";
+    public static final String STAGE_DONE = "DONE";
+    public static final String STAGE_FAILED = "FAILED";
+
     @TableId(type = IdType.AUTO)
     private Long id;
 
@@ -33,11 +45,36 @@ public class ReportGeneration {
 
     private Integer status;
 
+    private String stage;
+
+    private Integer progress;
+
     private String errorMessage;
 
     @TableField("execution_log")
     private String executionLog;
 
+    private String executionLogPath;
+
+    private String idempotencyKey;
+
+    private Long reusedFrom;
+
+    /**
+     * 领取任务的节点与租约，只由领取/续约语句更新，保存实体时不覆盖
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private String claimedBy;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime leaseExpireTime;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime heartbeatTime;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer attemptCount;
+
     private String createdBy;
 
     @TableField(fill = FieldFill.INSERT)
@@ -48,4 +85,10 @@ public class ReportGeneration {
 
     @TableLogic
     private Integer deleted;
+
+    /**
+     * 是否为从归档段文件读取的记录，不对应数据库列
+     */
+    @TableField(exist = false)
+    private Boolean archived;
 }
@@ -0,0 +1,33 @@
+package com.example.reportsystem.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 归档块索引：一个块是段文件中的一段独立 gzip 数据，包含 ID 在 [minId, maxId] 内的若干条记录（NDJSON）
+ */
+@Data
+@TableName("report_generation_archive")
+public class ReportGenerationArchive {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    private String segmentPath;
+
+    private Long minId;
+
+    private Long maxId;
+
+    private Long byteOffset;
+
+    private Long byteLength;
+
+    private Integer recordCount;
+
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,30 @@
+package com.example.reportsystem.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已归档记录引用的报表文件，按源记录（复用记录的 reusedFrom）记录一行
+ */
+@Data
+@TableName("report_generation_archive_file")
+public class ReportGenerationArchiveFile {
+
+    @TableId(type = IdType.INPUT)
+    private Long sourceId;
+
+    private Long templateId;
+
+    /**
+     * 保留策略清理文件后为 null
+     */
+    private String filePath;
+
+    private Long fileSize;
+
+    private LocalDateTime lastReferenceTime;
+}
@@ -0,0 +1,38 @@
+package com.example.reportsystem.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("report_statistics")
+public class ReportStatistics {
+
+    /**
+     * 模板ID，0 表示全部模板汇总
+     */
+    @TableId(type = IdType.INPUT)
+    private Long templateId;
+
+    private String templateName;
+
+    private Long totalCount;
+
+    private Long successCount;
+
+    private Long failureCount;
+
+    private Long totalDurationMs;
+
+    private Long bytesStored;
+
+    /**
+     * 耗时直方图各桶计数，逗号分隔（数据库中为 BIGINT[]）
+     */
+    private String durationHistogram;
+
+    private LocalDateTime updateTime;
+}
@@ -26,8 +26,29 @@ public class ReportTemplate {
 
     private String apiUrl;
 
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer apiCacheTtl;
+
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private String dataSources;
+
     private String groovyScript;
 
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer scriptTimeout;
+
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Boolean scriptStatic;
+
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer maxConcurrency;
+
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer retentionDays;
+
+    @TableField(updateStrategy = FieldStrategy.IGNORED)
+    private Integer retentionMaxCount;
+
     private Integer status;
 
     private String createdBy;
@@ -0,0 +1,43 @@
+package com.example.reportsystem.job;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Postgres 会话级 advisory lock，保证多节点部署时后台清理类任务同一时间只在一个节点执行。
+ * 加锁和解锁必须使用同一条连接，调用方在任务执行期间持有该连接。
+ */
+@Slf4j
+final class AdvisoryLocks {
+
+    /**
+     * 生成记录保留策略清理
+     */
+    static final long RETENTION = 0x5245504f52545245L;
+
+    /**
+     * 生成记录归档
+     */
+    static final long ARCHIVE = 0x5245504f52544152L;
+
+    private AdvisoryLocks() {
+    }
+
+    static boolean tryLock(Connection connection, long key) throws Exception {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_try_advisory_lock(" + key + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    static void unlock(Connection connection, long key) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT pg_advisory_unlock(" + key + ")");
+        } catch (Exception e) {
+            log.warn("释放任务锁失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package com.example.reportsystem.job;
+
+import com.alibaba.fastjson.JSON;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.example.reportsystem.entity.ReportGeneration;
+import com.example.reportsystem.entity.ReportGenerationArchive;
+import com.example.reportsystem.entity.ReportGenerationArchiveFile;
+import com.example.reportsystem.mapper.ReportGenerationArchiveFileMapper;
+import com.example.reportsystem.mapper.ReportGenerationArchiveMapper;
+import com.example.reportsystem.mapper.ReportGenerationMapper;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 生成记录冷归档
+ * 超过 after-days 天的已结束记录按 ID 顺序写成 gzip 压缩的 NDJSON 段文件存入 MinIO（段文件只写一次，不再修改），
+ * 每 records-per-block 条记录压缩为一个独立的 gzip 块，report_generation_archive 记录每块的 ID 范围和段内位置；
+ * 记录按块分页读取，段文件写入溢出缓冲区（超过 segment-memory-threshold 写入临时文件），内存中只保留一个块的记录；
+ * 段文件上传成功后在同一事务中写入块索引并物理删除原记录。
+ * 按 ID 读取归档记录时只按区间读取所在的块并解压，报表文件保留在原位置；
+ * 归档记录引用的报表文件记入 report_generation_archive_file，删除在线记录时不会误删，由保留策略按天数清理。
+ * 转存到 MinIO 的完整执行日志在段提交后删除，归档记录只保留 execution_log 中的首尾摘要。
+ * 定时归档在独立线程上执行，不占用 @Scheduled 调度线程。
+ */
+@Slf4j
+@Component
+public class GenerationArchiver {
+
+    private static final DateTimeFormatter PATH_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+    @Value("${report.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${report.archive.after-days:90}")
+    private int afterDays;
+
+    @Value("${report.archive.records-per-block:32}")
+    private int recordsPerBlock;
+
+    @Value("${report.archive.segment-max-records:5000}")
+    private int segmentMaxRecords;
+
+    @Value("${report.archive.segment-max-bytes:33554432}")
+    private long segmentMaxBytes;
+
+    @Value("${report.archive.segment-memory-threshold:4194304}")
+    private int segmentMemoryThreshold;
+
+    @Value("${report.archive.max-segments:20}")
+    private int maxSegments;
+
+    @Value("${report.archive.pause:500}")
+    private long pauseMillis;
+
+    @Value("${report.archive.read-cache-size:256}")
+    private int readCacheSize;
+
+    @Value("${report.archive.bucket:${minio.bucketName:report-files}}")
+    private String bucketName;
+
+    @Value("${minio.bucketName:report-files}")
+    private String fileBucketName;
+
+    @Autowired
+    private ReportGenerationMapper generationMapper;
+
+    @Autowired
+    private ReportGenerationArchiveMapper archiveMapper;
+
+    @Autowired
+    private ReportGenerationArchiveFileMapper archiveFileMapper;
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastReport;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("report-archive-"));
+
+    /**
+     * 最近读取的归档记录原始 JSON 行（归档后不再变化，可直接缓存），下载报表时按区间多次读取同一条记录。
+     * 缓存 JSON 而不是实体，每次读取都解析出新的实体，调用方修改返回值不会影响缓存。
+     */
+    private final LinkedHashMap<Long, String> readCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 一个待上传的段文件
+     */
+    static class Segment {
+        final DeferredFileOutputStream content;
+        final List<ReportGenerationArchive> blocks = new ArrayList<>();
+        final List<Long> ids = new ArrayList<>();
+        /**
+         * 段内记录引用的报表文件，按源记录
+         */
+        final Map<Long, ReportGenerationArchiveFile> files = new LinkedHashMap<>();
+        /**
+         * 段内记录的完整执行日志对象，段提交后删除
+         */
+        final List<String> logPaths = new ArrayList<>();
+
+        Segment(int memoryThreshold) {
+            content = new DeferredFileOutputStream(memoryThreshold, "archive-", ".ndjson.gz", null);
+        }
+
+        long size() {
+            return content.getByteCount();
+        }
+
+        void discard() throws IOException {
+            content.close();
+            if (!content.isInMemory()) {
+                FileUtils.deleteQuietly(content.getFile());
+            }
+        }
+    }
+
+    /**
+     * 定时触发：只把归档交给 worker 线程，调度线程立即返回
+     */
+    @Scheduled(cron = "${report.archive.cron:0 0 4 * * ?}")
+    public void scheduledRun() {
+        if (enabled && !running.get()) {
+            worker.execute(() -> {
+                try {
+                    run();
+                } catch (RuntimeException e) {
+                    // run 中已记录错误日志
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * 执行一次归档，返回归档报告；已有归档在进行（本节点或其他节点）时返回 null
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!AdvisoryLocks.tryLock(lockConnection, AdvisoryLocks.ARCHIVE)) {
+                log.info("其他节点正在执行生成记录归档，跳过本次");
+                return null;
+            }
+            try {
+                return doRun();
+            } finally {
+                AdvisoryLocks.unlock(lockConnection, AdvisoryLocks.ARCHIVE);
+            }
+        } catch (Exception e) {
+            log.error("生成记录归档失败", e);
+            throw new RuntimeException("生成记录归档失败: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> doRun() throws Exception {
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        initBucket();
+
+        int segments = 0;
+        long records = 0;
+        long bytes = 0;
+        while (segments < maxSegments) {
+            Segment segment = new Segment(segmentMemoryThreshold);
+            try {
+                boolean exhausted = writeSegment(segment, cutoff);
+                if (segment.ids.isEmpty()) {
+                    break;
+                }
+                segment.content.close();
+                long length = segment.size();
+
+                String segmentPath = "archive/" + LocalDateTime.now().format(PATH_FORMATTER) + "/"
+                        + segment.ids.get(0) + "-" + segment.ids.get(segment.ids.size() - 1) + ".ndjson.gz";
+                try (InputStream inputStream = segment.content.toInputStream()) {
+                    minioClient.putObject(
+                            PutObjectArgs.builder()
+                                    .bucket(bucketName)
+                                    .object(segmentPath)
+                                    .stream(inputStream, length, -1)
+                                    .contentType("application/gzip")
+                                    .build()
+                    );
+                }
+
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (ReportGenerationArchive block : segment.blocks) {
+                        block.setSegmentPath(segmentPath);
+                        archiveMapper.insert(block);
+                    }
+                    segment.files.values().forEach(archiveFileMapper::upsertReference);
+                    generationMapper.hardDeleteByIds(segment.ids);
+                });
+                removeLogObjects(segment.logPaths);
+
+                segments++;
+                records += segment.ids.size();
+                bytes += length;
+                log.info("已归档生成记录 {} 条到 {}（{} 字节）", segment.ids.size(), segmentPath, length);
+
+                if (exhausted) {
+                    break;
+                }
+            } finally {
+                segment.discard();
+            }
+            Thread.sleep(pauseMillis);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", LocalDateTime.now());
+        report.put("durationMs", System.currentTimeMillis() - start);
+        report.put("cutoff", cutoff);
+        report.put("segments", segments);
+        report.put("records", records);
+        report.put("compressedBytes", bytes);
+        report.put("truncated", segments >= maxSegments);
+        lastReport = report;
+        log.info("生成记录归档完成：段文件 {} 个，记录 {} 条，压缩后 {} 字节，耗时 {} 毫秒",
+                segments, records, bytes, report.get("durationMs"));
+        return report;
+    }
+
+    /**
+     * 按块分页读取待归档记录并压缩写入段文件，达到 segment-max-records 条或 segment-max-bytes 后结束本段。
+     * 返回 true 表示已没有更多待归档记录。
+     */
+    private boolean writeSegment(Segment segment, LocalDateTime cutoff) throws IOException {
+        Long lastId = null;
+        while (segment.ids.size() < segmentMaxRecords && segment.size() < segmentMaxBytes) {
+            int limit = Math.min(recordsPerBlock, segmentMaxRecords - segment.ids.size());
+            QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+            wrapper.lt("create_time", cutoff)
+                    .in("status", 1, 2)
+                    .gt(lastId != null, "id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + limit);
+            List<ReportGeneration> blockRows = generationMapper.selectList(wrapper);
+            if (blockRows.isEmpty()) {
+                return true;
+            }
+            writeBlock(segment, blockRows);
+            lastId = blockRows.get(blockRows.size() - 1).getId();
+            if (blockRows.size() < limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个块压缩为独立的 gzip 成员追加到段文件
+     */
+    static void writeBlock(Segment segment, List<ReportGeneration> blockRows) throws IOException {
+        long offset = segment.size();
+        // 关闭 gzip 流时不关闭段文件缓冲区，后续块继续追加
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(CloseShieldOutputStream.wrap(segment.content)), StandardCharsets.UTF_8)) {
+            for (ReportGeneration row : blockRows) {
+                if (row.getExecutionLogPath() != null) {
+                    segment.logPaths.add(row.getExecutionLogPath());
+                    row.setExecutionLogPath(null);
+                }
+                writer.write(JSON.toJSONString(row));
+                writer.write('\n');
+            }
+        }
+
+        ReportGenerationArchive block = new ReportGenerationArchive();
+        block.setMinId(blockRows.get(0).getId());
+        block.setMaxId(blockRows.get(blockRows.size() - 1).getId());
+        block.setByteOffset(offset);
+        block.setByteLength(segment.size() - offset);
+        block.setRecordCount(blockRows.size());
+        block.setCreateTime(LocalDateTime.now());
+        segment.blocks.add(block);
+        for (ReportGeneration row : blockRows) {
+            segment.ids.add(row.getId());
+            addFileReference(segment, row);
+        }
+    }
+
+    static void addFileReference(Segment segment, ReportGeneration row) {
+        if (row.getFilePath() == null) {
+            return;
+        }
+        Long sourceId = row.getReusedFrom() != null ? row.getReusedFrom() : row.getId();
+        ReportGenerationArchiveFile reference = segment.files.computeIfAbsent(sourceId, id -> {
+            ReportGenerationArchiveFile file = new ReportGenerationArchiveFile();
+            file.setSourceId(id);
+            file.setTemplateId(row.getTemplateId());
+            file.setFilePath(row.getFilePath());
+            file.setFileSize(row.getFileSize());
+            file.setLastReferenceTime(row.getCreateTime() != null ? row.getCreateTime() : LocalDateTime.now());
+            return file;
+        });
+        if (row.getCreateTime() != null && (reference.getLastReferenceTime() == null
+                || row.getCreateTime().isAfter(reference.getLastReferenceTime()))) {
+            reference.setLastReferenceTime(row.getCreateTime());
+        }
+    }
+
+    /**
+     * 删除已归档记录的执行日志对象；删除失败只记录日志，不影响已提交的段
+     */
+    private void removeLogObjects(List<String> logPaths) {
+        if (logPaths.isEmpty()) {
+            return;
+        }
+        List<DeleteObject> objects = new ArrayList<>(logPaths.size());
+        for (String path : logPaths) {
+            objects.add(new DeleteObject(path));
+        }
+        try {
+            // removeObjects 是惰性的，必须遍历结果才会真正发出删除请求
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder().bucket(fileBucketName).objects(objects).build());
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.warn("删除已归档记录的执行日志失败: {}, 原因: {}", error.objectName(), error.message());
+            }
+        } catch (Exception e) {
+            log.error("删除已归档记录的执行日志失败: {}", logPaths, e);
+        }
+    }
+
+    /**
+     * 按 ID 读取归档记录：查块索引后只按区间读取所在的 gzip 块，不存在时返回 null
+     */
+    public ReportGeneration find(Long id) {
+        if (id == null) {
+            return null;
+        }
+        String line;
+        synchronized (readCache) {
+            line = readCache.get(id);
+        }
+        if (line == null) {
+            for (ReportGenerationArchive block : archiveMapper.selectBlocksContaining(id)) {
+                line = readFromBlock(block, id);
+                if (line != null) {
+                    break;
+                }
+            }
+            if (line == null) {
+                return null;
+            }
+            synchronized (readCache) {
+                readCache.put(id, line);
+                if (readCache.size() > readCacheSize) {
+                    readCache.remove(readCache.keySet().iterator().next());
+                }
+            }
+        }
+
+        ReportGeneration generation = JSON.parseObject(line, ReportGeneration.class);
+        generation.setArchived(true);
+        return withFileState(generation);
+    }
+
+    /**
+     * 报表文件已被保留策略清理时去掉记录上的文件路径（段文件只写一次，清理状态记在 report_generation_archive_file）
+     */
+    ReportGeneration withFileState(ReportGeneration generation) {
+        if (generation.getFilePath() == null) {
+            return generation;
+        }
+        Long sourceId = generation.getReusedFrom() != null ? generation.getReusedFrom() : generation.getId();
+        ReportGenerationArchiveFile file = archiveFileMapper.selectById(sourceId);
+        if (file != null && file.getFilePath() == null) {
+            generation.setFilePath(null);
+            generation.setFileUrl(null);
+        }
+        return generation;
+    }
+
+    /**
+     * 在块中查找记录，返回该记录的 JSON 行，不存在时返回 null
+     */
+    private String readFromBlock(ReportGenerationArchive block, Long id) {
+        String idField = "\"id\":" + id;
+        try (InputStream in = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(block.getSegmentPath())
+                        .offset(block.getByteOffset())
+                        .length(block.getByteLength())
+                        .build());
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.contains(idField)) {
+                    continue;
+                }
+                if (id.equals(JSON.parseObject(line, ReportGeneration.class).getId())) {
+                    return line;
+                }
+            }
+            return null;
+        } catch (Exception e) {
+            log.error("读取归档记录失败: {}", id, e);
+            throw new RuntimeException("读取归档记录失败: " + e.getMessage());
+        }
+    }
+
+    private void initBucket() throws Exception {
+        if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build())) {
+            minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("afterDays", afterDays);
+        stats.put("archivedRecords", archiveMapper.sumRecordCount());
+        stats.put("blocks", archiveMapper.selectCount(null));
+        synchronized (readCache) {
+            stats.put("readCacheEntries", readCache.size());
+        }
+        stats.put("lastReport", lastReport);
+        return stats;
+    }
+}
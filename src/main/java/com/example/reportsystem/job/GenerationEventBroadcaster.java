@@ -0,0 +1,357 @@
+package com.example.reportsystem.job;
+
+import com.example.reportsystem.entity.ReportGeneration;
+import com.example.reportsystem.util.ScriptLogger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 生成进度和脚本日志的 SSE 推送
+ * 生成线程只把事件放入每个订阅者自己的有界队列（满了丢弃最早的事件并计数），由独立的发送线程写给浏览器，
+ * 慢客户端不会阻塞生成流水线。每个进行中的生成记录保留最近 replay-size 条事件，晚订阅的页面可以先补齐。
+ */
+@Slf4j
+@Component
+public class GenerationEventBroadcaster {
+
+    public static final String EVENT_LOG = "log";
+    public static final String EVENT_STAGE = "stage";
+    public static final String EVENT_DONE = "done";
+    public static final String EVENT_FAILED = "failed";
+    public static final String EVENT_DROPPED = "dropped";
+
+    @Value("${report.generation.events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${report.generation.events.replay-size:200}")
+    private int replaySize;
+
+    @Value("${report.generation.events.timeout:600000}")
+    private long emitterTimeout;
+
+    @Value("${report.generation.events.sender-threads:4}")
+    private int senderThreads;
+
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+    private ExecutorService sender;
+
+    private static class Event {
+        private final String name;
+        private final Object data;
+        private final boolean terminal;
+
+        Event(String name, Object data, boolean terminal) {
+            this.name = name;
+            this.data = data;
+            this.terminal = terminal;
+        }
+    }
+
+    /**
+     * 一条生成记录的事件通道
+     */
+    private class Channel {
+        private final Long generationId;
+        private final ArrayDeque<Event> replay = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private boolean active;
+        private String remoteStage;
+        private Integer remoteProgress;
+
+        Channel(Long generationId) {
+            this.generationId = generationId;
+        }
+    }
+
+    /**
+     * 一个浏览器连接：有界队列 + 单线程顺序发送
+     */
+    private class Subscriber {
+        private final Channel channel;
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private int dropped;
+
+        Subscriber(Channel channel, SseEmitter emitter) {
+            this.channel = channel;
+            this.emitter = emitter;
+        }
+
+        void offer(Event event) {
+            if (closed) {
+                return;
+            }
+            synchronized (queue) {
+                while (!queue.offer(event)) {
+                    queue.poll();
+                    dropped++;
+                }
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!closed) {
+                    Event event;
+                    int droppedCount;
+                    synchronized (queue) {
+                        event = queue.poll();
+                        droppedCount = dropped;
+                        dropped = 0;
+                    }
+                    if (droppedCount > 0) {
+                        emitter.send(SseEmitter.event().name(EVENT_DROPPED).data(droppedCount));
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    emitter.send(SseEmitter.event().name(event.name).data(payload(event)));
+                    if (event.terminal) {
+                        close();
+                        emitter.complete();
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("推送生成事件失败，记录ID: {}, 原因: {}", channel.generationId, e.getMessage());
+                close();
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // 释放标记后再检查一次，避免与 offer 并发时漏发
+            if (!closed && !queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        void close() {
+            closed = true;
+            channel.subscribers.remove(this);
+            synchronized (channel) {
+                if (!channel.active && channel.subscribers.isEmpty()) {
+                    channels.remove(channel.generationId, channel);
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        sender = Executors.newFixedThreadPool(senderThreads, new CustomizableThreadFactory("report-sse-"));
+    }
+
+    /**
+     * 订阅生成记录的事件；记录已结束且不在本节点进行中时，只推送当前状态后结束
+     */
+    public SseEmitter subscribe(ReportGeneration generation) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout);
+        Channel channel = channels.computeIfAbsent(generation.getId(), Channel::new);
+        Subscriber subscriber = new Subscriber(channel, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        List<Event> backlog;
+        synchronized (channel) {
+            if (channel.active) {
+                backlog = new ArrayList<>(channel.replay);
+            } else {
+                backlog = new ArrayList<>();
+                backlog.add(new Event(EVENT_STAGE, stagePayload(generation.getStage(), generation.getProgress()), false));
+                if (ReportGeneration.STAGE_DONE.equals(generation.getStage())) {
+                    backlog.add(new Event(EVENT_DONE, resultPayload(generation), true));
+                } else if (ReportGeneration.STAGE_FAILED.equals(generation.getStage())) {
+                    backlog.add(new Event(EVENT_FAILED, resultPayload(generation), true));
+                }
+            }
+            // 在通道锁内补发，保证补发的事件排在之后的新事件之前
+            backlog.forEach(subscriber::offer);
+            channel.subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    public void publishLog(Long generationId, ScriptLogger.LogEntry entry) {
+        publish(generationId, new Event(EVENT_LOG, entry, false));
+    }
+
+    public void publishStage(Long generationId, String stage, Integer progress) {
+        publish(generationId, new Event(EVENT_STAGE, stagePayload(stage, progress), false));
+    }
+
+    /**
+     * 推送结束事件（done/failed）并关闭通道，订阅者收到后断开
+     */
+    public void finish(ReportGeneration generation) {
+        String name = Integer.valueOf(1).equals(generation.getStatus()) ? EVENT_DONE : EVENT_FAILED;
+        Event event = new Event(name, resultPayload(generation), true);
+        Channel channel = channels.remove(generation.getId());
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            channel.active = false;
+            channel.replay.clear();
+            for (Subscriber subscriber : channel.subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * 本节点不再执行该记录（租约已失效）：通道转为从数据库同步，订阅者之后收到接管节点写入的进度和结果
+     */
+    public void release(Long generationId) {
+        Channel channel = channels.get(generationId);
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            channel.active = false;
+            channel.replay.clear();
+            if (channel.subscribers.isEmpty()) {
+                channels.remove(generationId, channel);
+            }
+        }
+    }
+
+    /**
+     * 有订阅者、但没有在本节点执行的生成记录（由其他节点领取执行），需要从数据库同步进度
+     */
+    public List<Long> getRemoteWatchedIds() {
+        List<Long> ids = new ArrayList<>();
+        for (Channel channel : channels.values()) {
+            synchronized (channel) {
+                if (!channel.active && !channel.subscribers.isEmpty()) {
+                    ids.add(channel.generationId);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 转发其他节点执行的记录的最新状态：已结束时推送结束事件，否则阶段变化时推送阶段事件（不含日志）
+     */
+    public void relayRemote(ReportGeneration generation) {
+        if (generation.getStatus() != null && generation.getStatus() != 0) {
+            Channel channel = channels.get(generation.getId());
+            if (channel != null) {
+                synchronized (channel) {
+                    if (channel.active) {
+                        return;
+                    }
+                }
+                finish(generation);
+            }
+            return;
+        }
+        Channel channel = channels.get(generation.getId());
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            if (channel.active || (Objects.equals(channel.remoteStage, generation.getStage())
+                    && Objects.equals(channel.remoteProgress, generation.getProgress()))) {
+                return;
+            }
+            channel.remoteStage = generation.getStage();
+            channel.remoteProgress = generation.getProgress();
+            Event event = new Event(EVENT_STAGE, stagePayload(generation.getStage(), generation.getProgress()), false);
+            for (Subscriber subscriber : channel.subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int subscriberCount = 0;
+        for (Channel channel : channels.values()) {
+            subscriberCount += channel.subscribers.size();
+        }
+        stats.put("channels", channels.size());
+        stats.put("subscribers", subscriberCount);
+        stats.put("bufferSize", bufferSize);
+        stats.put("replaySize", replaySize);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    private void publish(Long generationId, Event event) {
+        if (generationId == null) {
+            return;
+        }
+        Channel channel = channels.computeIfAbsent(generationId, Channel::new);
+        synchronized (channel) {
+            channel.active = true;
+            if (channel.replay.size() >= replaySize) {
+                channel.replay.pollFirst();
+            }
+            channel.replay.addLast(event);
+            for (Subscriber subscriber : channel.subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private static Object payload(Event event) {
+        if (event.data instanceof ScriptLogger.LogEntry) {
+            ScriptLogger.LogEntry entry = (ScriptLogger.LogEntry) event.data;
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("timestamp", entry.getTimestamp());
+            data.put("level", entry.getLevel());
+            data.put("message", entry.getMessage());
+            data.put("exception", entry.getException());
+            return data;
+        }
+        return event.data;
+    }
+
+    private static Map<String, Object> stagePayload(String stage, Integer progress) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("stage", stage);
+        data.put("progress", progress);
+        return data;
+    }
+
+    private static Map<String, Object> resultPayload(ReportGeneration generation) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", generation.getId());
+        data.put("status", generation.getStatus());
+        data.put("stage", generation.getStage());
+        data.put("fileName", generation.getFileName());
+        data.put("fileSize", generation.getFileSize());
+        data.put("errorMessage", generation.getErrorMessage());
+        return data;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.reportsystem.job;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * 报表异步生成工作线程池
+ * 固定线程数 + 有界队列，队列满时拒绝提交；同一生成记录在本节点只会排队一次。
+ * 多节点部署时各节点按 pool-size 从数据库领取任务，pool-size 即单节点的并发上限。
+ */
+@Slf4j
+@Component
+public class GenerationJobExecutor {
+
+    @Value("${report.generation.async.pool-size:4}")
+    private int poolSize;
+
+    @Value("${report.generation.async.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${report.generation.batch.max-concurrency:0}")
+    private int batchMaxConcurrency;
+
+    @Value("${report.node.id:}")
+    private String nodeId;
+
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor;
+    private ExecutorService batchExecutor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("report-generation-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        if (batchMaxConcurrency <= 0) {
+            batchMaxConcurrency = Runtime.getRuntime().availableProcessors();
+        }
+        batchExecutor = Executors.newFixedThreadPool(batchMaxConcurrency, new CustomizableThreadFactory("report-batch-"));
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            // pid@hostname，重启后变化，避免新进程误认旧进程领取的任务
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        log.info("报表生成线程池初始化完成，节点: {}, 线程数: {}, 队列容量: {}, 批量并发上限: {}",
+                nodeId, poolSize, queueCapacity, batchMaxConcurrency);
+    }
+
+    /**
+     * 以指定并发度执行 itemCount 个批量子任务，阻塞直到全部完成。
+     * 每个工作线程从共享下标中领取下一项，子任务自行处理异常。
+     */
+    public void runBatch(int itemCount, Integer concurrency, IntConsumer task) {
+        int workers = concurrency == null || concurrency <= 0 ? batchMaxConcurrency : Math.min(concurrency, batchMaxConcurrency);
+        workers = Math.min(workers, itemCount);
+
+        AtomicInteger nextIndex = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = nextIndex.getAndIncrement()) < itemCount) {
+                    task.accept(index);
+                }
+            }, batchExecutor);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * 提交生成任务，队列已满时返回 false
+     */
+    public boolean trySubmit(Long generationId, Runnable job) {
+        if (!pendingIds.add(generationId)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } catch (Exception e) {
+                    log.error("生成任务执行异常: {}", generationId, e);
+                } finally {
+                    pendingIds.remove(generationId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingIds.remove(generationId);
+            log.warn("生成队列已满，拒绝任务: {}", generationId);
+            return false;
+        }
+    }
+
+    public boolean isPending(Long generationId) {
+        return pendingIds.contains(generationId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 本节点还能领取的任务数：只按空闲线程领取，不在本地队列里囤积任务，让其他空闲节点能领到
+     */
+    public int getIdleSlots() {
+        return Math.max(0, poolSize - pendingIds.size());
+    }
+
+    /**
+     * 已提交到本节点（排队或执行中）的任务ID
+     */
+    public Set<Long> getPendingIds() {
+        return new HashSet<>(pendingIds);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("poolSize", poolSize);
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completedTaskCount", executor.getCompletedTaskCount());
+        stats.put("batchMaxConcurrency", batchMaxConcurrency);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
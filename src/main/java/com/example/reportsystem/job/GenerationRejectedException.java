@@ -0,0 +1,27 @@
+package com.example.reportsystem.job;
+
+/**
+ * 生成请求被限流或排队已满，控制器返回 429 并通过 Retry-After 告知客户端重试时间
+ */
+public class GenerationRejectedException extends RuntimeException {
+
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public GenerationRejectedException(String reason, String message, long retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    /**
+     * 拒绝原因，用于指标标签：user_rate/template_rate/user_queue/queue/template_busy
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
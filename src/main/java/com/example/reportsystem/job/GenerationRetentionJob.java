@@ -0,0 +1,418 @@
+package com.example.reportsystem.job;
+
+import com.example.reportsystem.entity.ReportGeneration;
+import com.example.reportsystem.entity.ReportGenerationArchiveFile;
+import com.example.reportsystem.entity.ReportStatistics;
+import com.example.reportsystem.entity.ReportTemplate;
+import com.example.reportsystem.mapper.ReportGenerationArchiveFileMapper;
+import com.example.reportsystem.mapper.ReportGenerationMapper;
+import com.example.reportsystem.mapper.ReportStatisticsMapper;
+import com.example.reportsystem.mapper.ReportTemplateMapper;
+import com.example.reportsystem.metrics.GenerationStatistics;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 生成记录保留策略清理
+ * 按模板的 retention_days / retention_max_count（为空用系统默认值）清理已结束的生成记录，
+ * 并物理删除逻辑删除超过 purge-deleted-after-days 天的记录：报表文件和执行日志用 removeObjects 批量删除，
+ * 记录按批物理删除；批次之间暂停 pause 毫秒，本节点生成线程全忙时额外等待，避免与在线生成争抢 IO。
+ * 已归档记录引用的文件（report_generation_archive_file）不随在线记录删除，按模板保留天数单独清理。
+ * 多节点部署时通过 Postgres advisory lock 保证同一时间只有一个节点在清理。
+ * 定时清理在独立线程上执行，不占用 @Scheduled 调度线程。
+ */
+@Slf4j
+@Component
+public class GenerationRetentionJob {
+
+    @Value("${report.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${report.retention.default-days:0}")
+    private int defaultDays;
+
+    @Value("${report.retention.default-max-count:0}")
+    private int defaultMaxCount;
+
+    @Value("${report.retention.purge-deleted-after-days:7}")
+    private int purgeDeletedAfterDays;
+
+    @Value("${report.retention.batch-size:500}")
+    private int batchSize;
+
+    @Value("${report.retention.max-batches:200}")
+    private int maxBatches;
+
+    @Value("${report.retention.pause:200}")
+    private long pauseMillis;
+
+    @Value("${report.retention.busy-pause:2000}")
+    private long busyPauseMillis;
+
+    @Value("${minio.bucketName:report-files}")
+    private String bucketName;
+
+    @Autowired
+    private ReportGenerationMapper generationMapper;
+
+    @Autowired
+    private ReportTemplateMapper templateMapper;
+
+    @Autowired
+    private ReportStatisticsMapper statisticsMapper;
+
+    @Autowired
+    private ReportGenerationArchiveFileMapper archiveFileMapper;
+
+    @Autowired
+    private GenerationStatistics generationStatistics;
+
+    @Autowired
+    private GenerationJobExecutor generationJobExecutor;
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastReport;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("report-retention-"));
+
+    /**
+     * 一次清理的统计
+     */
+    private static class Report {
+        long rowsDeleted;
+        long deletedRowsPurged;
+        long archivedFilesRemoved;
+        long filesRemoved;
+        long bytesReclaimed;
+        long logsRemoved;
+        long failedObjects;
+        int batches;
+        boolean truncated;
+    }
+
+    /**
+     * 定时触发：只把清理交给 worker 线程，调度线程立即返回
+     */
+    @Scheduled(cron = "${report.retention.cron:0 30 3 * * ?}")
+    public void scheduledRun() {
+        if (enabled && !running.get()) {
+            worker.execute(() -> {
+                try {
+                    run();
+                } catch (RuntimeException e) {
+                    // run 中已记录错误日志
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * 执行一次清理，返回清理报告；已有清理在进行（本节点或其他节点）时返回 null
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!AdvisoryLocks.tryLock(lockConnection, AdvisoryLocks.RETENTION)) {
+                log.info("其他节点正在执行保留策略清理，跳过本次");
+                return null;
+            }
+            try {
+                return doRun();
+            } finally {
+                AdvisoryLocks.unlock(lockConnection, AdvisoryLocks.RETENTION);
+            }
+        } catch (Exception e) {
+            log.error("保留策略清理失败", e);
+            throw new RuntimeException("保留策略清理失败: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> doRun() throws InterruptedException {
+        LocalDateTime startedAt = LocalDateTime.now();
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+
+        for (Map.Entry<Long, int[]> policy : loadPolicies().entrySet()) {
+            Long templateId = policy.getKey();
+            int days = policy.getValue()[0];
+            int maxCount = policy.getValue()[1];
+            if (days > 0) {
+                LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
+                purgeLoop(report, () -> generationMapper.selectRetentionCandidates(templateId, cutoff, 0, batchSize), false);
+                purgeArchivedFiles(report, templateId, cutoff);
+            }
+            if (maxCount > 0) {
+                purgeLoop(report, () -> generationMapper.selectRetentionCandidates(templateId, null, maxCount, batchSize), false);
+            }
+        }
+        if (purgeDeletedAfterDays >= 0) {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(purgeDeletedAfterDays);
+            purgeLoop(report, () -> generationMapper.selectPurgeableDeleted(cutoff, batchSize), true);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startedAt", startedAt);
+        result.put("durationMs", System.currentTimeMillis() - start);
+        result.put("rowsDeleted", report.rowsDeleted);
+        result.put("deletedRowsPurged", report.deletedRowsPurged);
+        result.put("archivedFilesRemoved", report.archivedFilesRemoved);
+        result.put("filesRemoved", report.filesRemoved);
+        result.put("bytesReclaimed", report.bytesReclaimed);
+        result.put("logsRemoved", report.logsRemoved);
+        result.put("failedObjects", report.failedObjects);
+        result.put("batches", report.batches);
+        result.put("truncated", report.truncated);
+        lastReport = result;
+        log.info("保留策略清理完成：删除记录 {} 条（其中已逻辑删除 {} 条），删除文件 {} 个（其中归档记录的文件 {} 个）共 {} 字节，执行日志 {} 个，失败 {} 个，耗时 {} 毫秒{}",
+                report.rowsDeleted, report.deletedRowsPurged, report.filesRemoved, report.archivedFilesRemoved, report.bytesReclaimed,
+                report.logsRemoved, report.failedObjects, result.get("durationMs"),
+                report.truncated ? "（达到单次批次上限，剩余部分下次继续）" : "");
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface BatchLoader {
+        List<ReportGeneration> load();
+    }
+
+    /**
+     * 反复取一批候选记录清理，直到没有候选、本批没有进展或达到单次批次上限
+     */
+    private void purgeLoop(Report report, BatchLoader loader, boolean alreadyDeleted) throws InterruptedException {
+        while (true) {
+            if (report.batches >= maxBatches) {
+                report.truncated = true;
+                return;
+            }
+            List<ReportGeneration> batch = loader.load();
+            if (batch.isEmpty()) {
+                return;
+            }
+            report.batches++;
+            int deleted = purgeBatch(batch, report);
+            if (alreadyDeleted) {
+                report.deletedRowsPurged += deleted;
+            }
+            if (deleted == 0 || batch.size() < batchSize) {
+                return;
+            }
+            throttle();
+        }
+    }
+
+    /**
+     * 清理一批记录：删除不再被其他记录引用的文件和执行日志，对象删除成功的记录再物理删除
+     */
+    private int purgeBatch(List<ReportGeneration> batch, Report report) {
+        Set<Long> batchIds = new HashSet<>();
+        Set<Long> sourceIds = new HashSet<>();
+        for (ReportGeneration generation : batch) {
+            batchIds.add(generation.getId());
+            if (generation.getFilePath() != null) {
+                sourceIds.add(sourceOf(generation));
+            }
+        }
+        Set<Long> shared = new HashSet<>();
+        if (!sourceIds.isEmpty()) {
+            shared.addAll(generationMapper.selectSharedSources(sourceIds, batchIds));
+            // 已归档记录仍引用的文件留给 purgeArchivedFiles 按归档记录的保留期清理
+            shared.addAll(archiveFileMapper.selectReferenced(sourceIds));
+        }
+
+        // 每个文件只删除一次（复用记录与源记录共用文件），记下文件大小和所属模板用于扣减存储量
+        Map<String, ReportGeneration> files = new LinkedHashMap<>();
+        List<String> objects = new ArrayList<>();
+        for (ReportGeneration generation : batch) {
+            if (generation.getFilePath() != null && !shared.contains(sourceOf(generation))
+                    && !files.containsKey(generation.getFilePath())) {
+                files.put(generation.getFilePath(), generation);
+                objects.add(generation.getFilePath());
+            }
+            if (generation.getExecutionLogPath() != null) {
+                objects.add(generation.getExecutionLogPath());
+            }
+        }
+
+        Set<String> failed = removeObjects(objects);
+        report.failedObjects += failed.size();
+
+        List<Long> deletable = new ArrayList<>();
+        for (ReportGeneration generation : batch) {
+            boolean fileFailed = generation.getFilePath() != null && failed.contains(generation.getFilePath())
+                    && files.containsKey(generation.getFilePath());
+            boolean logFailed = generation.getExecutionLogPath() != null && failed.contains(generation.getExecutionLogPath());
+            if (!fileFailed && !logFailed) {
+                deletable.add(generation.getId());
+            }
+            if (generation.getExecutionLogPath() != null && !logFailed) {
+                report.logsRemoved++;
+            }
+        }
+        for (Map.Entry<String, ReportGeneration> file : files.entrySet()) {
+            if (failed.contains(file.getKey())) {
+                continue;
+            }
+            ReportGeneration owner = file.getValue();
+            long size = owner.getFileSize() != null ? owner.getFileSize() : 0L;
+            report.filesRemoved++;
+            report.bytesReclaimed += size;
+            generationStatistics.recordDeleted(owner.getTemplateId(), size);
+        }
+
+        int deleted = deletable.isEmpty() ? 0 : generationMapper.hardDeleteByIds(deletable);
+        report.rowsDeleted += deleted;
+        return deleted;
+    }
+
+    /**
+     * 清理模板下最晚引用早于 cutoff、且已没有在线记录引用的归档文件；归档记录本身保留（只读），文件路径置空
+     */
+    private void purgeArchivedFiles(Report report, Long templateId, LocalDateTime cutoff) throws InterruptedException {
+        while (true) {
+            if (report.batches >= maxBatches) {
+                report.truncated = true;
+                return;
+            }
+            List<ReportGenerationArchiveFile> batch = archiveFileMapper.selectExpired(templateId, cutoff, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            report.batches++;
+            List<String> objects = new ArrayList<>();
+            for (ReportGenerationArchiveFile file : batch) {
+                objects.add(file.getFilePath());
+            }
+            Set<String> failed = removeObjects(objects);
+            report.failedObjects += failed.size();
+
+            List<Long> removed = new ArrayList<>();
+            for (ReportGenerationArchiveFile file : batch) {
+                if (failed.contains(file.getFilePath())) {
+                    continue;
+                }
+                long size = file.getFileSize() != null ? file.getFileSize() : 0L;
+                removed.add(file.getSourceId());
+                report.filesRemoved++;
+                report.archivedFilesRemoved++;
+                report.bytesReclaimed += size;
+                generationStatistics.recordDeleted(file.getTemplateId(), size);
+            }
+            if (!removed.isEmpty()) {
+                archiveFileMapper.clearFilePath(removed);
+            }
+            if (removed.isEmpty() || batch.size() < batchSize) {
+                return;
+            }
+            throttle();
+        }
+    }
+
+    /**
+     * 批量删除对象，返回删除失败的对象名（删除不存在的对象视为成功）
+     */
+    private Set<String> removeObjects(List<String> objectNames) {
+        Set<String> failed = new HashSet<>();
+        if (objectNames.isEmpty()) {
+            return failed;
+        }
+        List<DeleteObject> objects = new ArrayList<>(objectNames.size());
+        for (String name : objectNames) {
+            objects.add(new DeleteObject(name));
+        }
+        try {
+            // removeObjects 是惰性的，必须遍历结果才会真正发出删除请求
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder().bucket(bucketName).objects(objects).build());
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                failed.add(error.objectName());
+                log.warn("删除对象失败: {}, 原因: {}", error.objectName(), error.message());
+            }
+        } catch (Exception e) {
+            log.error("批量删除对象失败", e);
+            failed.addAll(objectNames);
+        }
+        return failed;
+    }
+
+    /**
+     * 各模板的保留策略 [天数, 条数]：包括已删除模板（按统计表中出现过的模板ID，使用系统默认值）
+     */
+    private Map<Long, int[]> loadPolicies() {
+        Map<Long, int[]> policies = new HashMap<>();
+        for (ReportTemplate template : templateMapper.selectList(null)) {
+            int days = template.getRetentionDays() != null ? template.getRetentionDays() : defaultDays;
+            int maxCount = template.getRetentionMaxCount() != null ? template.getRetentionMaxCount() : defaultMaxCount;
+            policies.put(template.getId(), new int[]{days, maxCount});
+        }
+        for (ReportStatistics statistics : statisticsMapper.selectAllStatistics()) {
+            Long templateId = statistics.getTemplateId();
+            if (templateId != null && templateId != GenerationStatistics.GLOBAL_ID) {
+                policies.putIfAbsent(templateId, new int[]{defaultDays, defaultMaxCount});
+            }
+        }
+        policies.values().removeIf(policy -> policy[0] <= 0 && policy[1] <= 0);
+        return policies;
+    }
+
+    private void throttle() throws InterruptedException {
+        Thread.sleep(pauseMillis);
+        if (generationJobExecutor.getIdleSlots() == 0) {
+            Thread.sleep(busyPauseMillis);
+        }
+    }
+
+    private static Long sourceOf(ReportGeneration generation) {
+        return generation.getReusedFrom() != null ? generation.getReusedFrom() : generation.getId();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("defaultDays", defaultDays);
+        stats.put("defaultMaxCount", defaultMaxCount);
+        stats.put("purgeDeletedAfterDays", purgeDeletedAfterDays);
+        stats.put("lastReport", lastReport);
+        return stats;
+    }
+}
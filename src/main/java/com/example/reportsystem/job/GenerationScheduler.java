@@ -0,0 +1,277 @@
+package com.example.reportsystem.job;
+
+import com.example.reportsystem.entity.ReportTemplate;
+import com.example.reportsystem.metrics.GenerationMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成请求调度策略
+ * 准入：按用户、按模板的令牌桶限流（本节点内），超出时抛出 GenerationRejectedException（429 + Retry-After）；
+ * 公平：异步任务领取时按用户加权轮转（user-weights），同一用户提交大量任务不会阻塞其他用户；
+ * 隔离：每个模板同时执行的任务数不超过 max-concurrency（模板配置优先，异步任务按全部节点计算，同步生成按本节点计算）。
+ */
+@Slf4j
+@Component
+public class GenerationScheduler {
+
+    public static final String REJECT_USER_RATE = "user_rate";
+    public static final String REJECT_TEMPLATE_RATE = "template_rate";
+    public static final String REJECT_USER_QUEUE = "user_queue";
+    public static final String REJECT_QUEUE = "queue";
+    public static final String REJECT_TEMPLATE_BUSY = "template_busy";
+
+    /**
+     * 令牌桶数量超过该值时清理长时间未使用的桶
+     */
+    private static final int MAX_BUCKETS = 10000;
+    private static final long BUCKET_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Value("${report.generation.scheduler.user-weights:}")
+    private String userWeightsConfig;
+
+    @Value("${report.generation.scheduler.default-template-concurrency:0}")
+    private int defaultTemplateConcurrency;
+
+    @Value("${report.generation.scheduler.bulkhead-wait:0}")
+    private long bulkheadWaitMillis;
+
+    @Value("${report.generation.scheduler.rate.user-per-minute:0}")
+    private double userPerMinute;
+
+    @Value("${report.generation.scheduler.rate.user-burst:20}")
+    private int userBurst;
+
+    @Value("${report.generation.scheduler.rate.template-per-minute:0}")
+    private double templatePerMinute;
+
+    @Value("${report.generation.scheduler.rate.template-burst:20}")
+    private int templateBurst;
+
+    @Value("${report.generation.scheduler.max-queued-per-user:200}")
+    private long maxQueuedPerUser;
+
+    @Value("${report.generation.scheduler.queue-retry-after:30}")
+    private long queueRetryAfterSeconds;
+
+    @Value("${report.generation.scheduler.scan-limit:1000}")
+    private int scanLimit;
+
+    @Autowired
+    private GenerationMetrics generationMetrics;
+
+    private Map<String, Integer> userWeights = Collections.emptyMap();
+    private final ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, TokenBucket> templateBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 令牌桶：容量 burst，每分钟补充 perMinute 个
+     */
+    private static class TokenBucket {
+        private final double capacity;
+        private final double refillPerMilli;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, double perMinute) {
+            this.capacity = Math.max(1, capacity);
+            this.refillPerMilli = perMinute / 60000.0;
+            this.tokens = this.capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * 取一个令牌，成功返回 0，否则返回距下一个令牌的毫秒数
+         */
+        synchronized long tryAcquire() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / refillPerMilli);
+        }
+
+        synchronized boolean idle(long now) {
+            return now - lastRefill >= BUCKET_IDLE_MILLIS;
+        }
+    }
+
+    /**
+     * 本节点内的模板并发隔离（同步、批量生成）
+     */
+    private static class Bulkhead {
+        private final int limit;
+        private final Semaphore semaphore;
+
+        Bulkhead(int limit) {
+            this.limit = limit;
+            this.semaphore = new Semaphore(limit);
+        }
+    }
+
+    /**
+     * 占用的并发名额，用 try-with-resources 释放
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Permit NO_PERMIT = () -> { };
+
+    @PostConstruct
+    public void init() {
+        userWeights = parseWeights(userWeightsConfig);
+        log.info("生成调度初始化完成，用户权重: {}, 模板默认并发上限: {}, 用户限流: {}/分钟, 模板限流: {}/分钟",
+                userWeights, defaultTemplateConcurrency, userPerMinute, templatePerMinute);
+    }
+
+    /**
+     * 准入检查：用户和模板的令牌桶，任一耗尽即拒绝
+     */
+    public void admit(String user, ReportTemplate template) {
+        if (userPerMinute > 0) {
+            long waitMillis = bucket(userBuckets, user != null ? user : "", userBurst, userPerMinute).tryAcquire();
+            if (waitMillis > 0) {
+                throw reject(REJECT_USER_RATE, "提交过于频繁，请稍后重试", waitMillis);
+            }
+        }
+        if (templatePerMinute > 0 && template.getId() != null) {
+            long waitMillis = bucket(templateBuckets, template.getId(), templateBurst, templatePerMinute).tryAcquire();
+            if (waitMillis > 0) {
+                throw reject(REJECT_TEMPLATE_RATE, "该模板生成请求过多，请稍后重试", waitMillis);
+            }
+        }
+    }
+
+    /**
+     * 排队已满时的拒绝（用户排队数或全部排队数超过上限）
+     */
+    public GenerationRejectedException queueFull(boolean perUser) {
+        return perUser
+                ? reject(REJECT_USER_QUEUE, "您排队中的生成任务已达上限 " + maxQueuedPerUser + " 个，请稍后重试",
+                        TimeUnit.SECONDS.toMillis(queueRetryAfterSeconds))
+                : reject(REJECT_QUEUE, "生成队列已满，请稍后重试", TimeUnit.SECONDS.toMillis(queueRetryAfterSeconds));
+    }
+
+    /**
+     * 同步生成占用模板并发名额，bulkhead-wait 毫秒内取不到时拒绝
+     */
+    public Permit enterBulkhead(ReportTemplate template) {
+        int limit = getTemplateConcurrency(template);
+        if (limit <= 0 || template.getId() == null) {
+            return NO_PERMIT;
+        }
+        Bulkhead bulkhead = bulkheads.compute(template.getId(),
+                (id, current) -> current != null && current.limit == limit ? current : new Bulkhead(limit));
+        boolean acquired;
+        try {
+            acquired = bulkheadWaitMillis > 0
+                    ? bulkhead.semaphore.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS)
+                    : bulkhead.semaphore.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw reject(REJECT_TEMPLATE_BUSY, "该模板正在执行的生成任务已达上限 " + limit + " 个，请稍后重试",
+                    TimeUnit.SECONDS.toMillis(5));
+        }
+        return bulkhead.semaphore::release;
+    }
+
+    /**
+     * 批量生成的并发度不超过模板并发上限
+     */
+    public Integer capConcurrency(ReportTemplate template, Integer concurrency) {
+        int limit = getTemplateConcurrency(template);
+        if (limit <= 0) {
+            return concurrency;
+        }
+        return concurrency == null || concurrency <= 0 ? limit : Math.min(concurrency, limit);
+    }
+
+    public int getTemplateConcurrency(ReportTemplate template) {
+        return template.getMaxConcurrency() != null ? template.getMaxConcurrency() : defaultTemplateConcurrency;
+    }
+
+    public int getDefaultTemplateConcurrency() {
+        return defaultTemplateConcurrency;
+    }
+
+    public Map<String, Integer> getUserWeights() {
+        return userWeights;
+    }
+
+    public long getMaxQueuedPerUser() {
+        return maxQueuedPerUser;
+    }
+
+    public int getScanLimit() {
+        return scanLimit;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("userWeights", userWeights);
+        stats.put("defaultTemplateConcurrency", defaultTemplateConcurrency);
+        stats.put("userPerMinute", userPerMinute);
+        stats.put("templatePerMinute", templatePerMinute);
+        stats.put("maxQueuedPerUser", maxQueuedPerUser);
+        stats.put("userBuckets", userBuckets.size());
+        stats.put("templateBuckets", templateBuckets.size());
+        Map<Long, Object> local = new LinkedHashMap<>();
+        bulkheads.forEach((id, bulkhead) -> local.put(id, (bulkhead.limit - bulkhead.semaphore.availablePermits()) + "/" + bulkhead.limit));
+        stats.put("localBulkheads", local);
+        return stats;
+    }
+
+    private GenerationRejectedException reject(String reason, String message, long waitMillis) {
+        generationMetrics.incrementRejected(reason);
+        return new GenerationRejectedException(reason, message, (long) Math.ceil(waitMillis / 1000.0));
+    }
+
+    private <K> TokenBucket bucket(ConcurrentHashMap<K, TokenBucket> buckets, K key, int burst, double perMinute) {
+        if (buckets.size() > MAX_BUCKETS) {
+            long now = System.currentTimeMillis();
+            buckets.values().removeIf(b -> b.idle(now));
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(burst, perMinute));
+    }
+
+    /**
+     * 解析 "alice:3,bob:2" 形式的用户权重，未配置的用户权重为 1
+     */
+    private static Map<String, Integer> parseWeights(String config) {
+        if (config == null || config.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String item : config.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("用户权重配置格式错误: " + item);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("用户权重必须大于 0: " + item);
+            }
+            weights.put(parts[0].trim(), weight);
+        }
+        return Collections.unmodifiableMap(weights);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.reportsystem.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.reportsystem.entity.ReportGenerationArchiveFile;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface ReportGenerationArchiveFileMapper extends BaseMapper<ReportGenerationArchiveFile> {
+
+    /**
+     * 记录归档记录对文件的引用，同一文件再次被归档记录引用时只推后最晚引用时间
+     */
+    @Insert("INSERT INTO report_generation_archive_file (source_id, template_id, file_path, file_size, last_reference_time) " +
+            "VALUES (#{sourceId}, #{templateId}, #{filePath}, #{fileSize}, #{lastReferenceTime}) " +
+            "ON CONFLICT (source_id) DO UPDATE SET last_reference_time = " +
+            "GREATEST(report_generation_archive_file.last_reference_time, EXCLUDED.last_reference_time)")
+    int upsertReference(ReportGenerationArchiveFile reference);
+
+    /**
+     * 这些源记录中文件仍被归档记录引用的ID
+     */
+    @Select("<script>SELECT source_id FROM report_generation_archive_file WHERE file_path IS NOT NULL AND source_id IN " +
+            "<foreach collection='sourceIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<Long> selectReferenced(@Param("sourceIds") Collection<Long> sourceIds);
+
+    /**
+     * 保留策略清理候选：模板下最晚引用早于 cutoff、且没有在线记录（含已逻辑删除的记录）引用的归档文件
+     */
+    @Select("SELECT * FROM report_generation_archive_file f " +
+            "WHERE f.template_id = #{templateId} AND f.file_path IS NOT NULL AND f.last_reference_time < #{cutoff} " +
+            "AND NOT EXISTS (SELECT 1 FROM report_generation g " +
+            "    WHERE (g.id = f.source_id OR g.reused_from = f.source_id) AND g.file_path IS NOT NULL) " +
+            "ORDER BY f.last_reference_time LIMIT #{limit}")
+    List<ReportGenerationArchiveFile> selectExpired(@Param("templateId") Long templateId,
+                                                    @Param("cutoff") LocalDateTime cutoff,
+                                                    @Param("limit") int limit);
+
+    @Update("<script>UPDATE report_generation_archive_file SET file_path = NULL WHERE source_id IN " +
+            "<foreach collection='sourceIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int clearFilePath(@Param("sourceIds") Collection<Long> sourceIds);
+}
@@ -0,0 +1,23 @@
+package com.example.reportsystem.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.reportsystem.entity.ReportGenerationArchive;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface ReportGenerationArchiveMapper extends BaseMapper<ReportGenerationArchive> {
+
+    /**
+     * ID 范围包含该记录的块（通常只有一个，后补归档的记录可能落在范围重叠的新块中）；
+     * 条件与 idx_generation_archive_id_range 的 GiST 表达式索引一致，查找耗时不随归档块数线性增长
+     */
+    @Select("SELECT * FROM report_generation_archive WHERE int8range(min_id, max_id, '[]') @> #{id}::bigint ORDER BY id DESC")
+    List<ReportGenerationArchive> selectBlocksContaining(@Param("id") Long id);
+
+    @Select("SELECT COALESCE(sum(record_count), 0) FROM report_generation_archive")
+    long sumRecordCount();
+}
@@ -2,8 +2,173 @@ package com.example.reportsystem.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.reportsystem.entity.ReportGeneration;
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ReportGenerationMapper extends BaseMapper<ReportGeneration> {
+
+    /**
+     * 按表统计信息估算总行数（含逻辑删除的行），不扫描表
+     */
+    @Select("SELECT GREATEST(reltuples, 0)::BIGINT FROM pg_class WHERE relname = 'report_generation'")
+    Long estimateRowCount();
+
+    /**
+     * 统计模板的生成记录数，最多数到 cap 条
+     */
+    @Select("SELECT count(*) FROM (SELECT 1 FROM report_generation WHERE template_id = #{templateId} AND deleted = 0 LIMIT #{cap}) t")
+    long countByTemplateCapped(@Param("templateId") Long templateId, @Param("cap") long cap);
+
+    /**
+     * 按公平顺序领取排队中的任务：
+     * 1. 每个用户的排队任务按提交顺序编号，按 编号 / 用户权重 排序（加权轮转），同一用户的大量任务不会排在其他用户前面；
+     * 2. 模板已执行中的任务数 + 本次领取数不超过模板并发上限（max_concurrency，为空用 defaultTemplateCap，0 不限制）；
+     * 3. SKIP LOCKED 跳过其他节点正在领取的行，多个节点并发领取互不阻塞也不会重复。
+     * 只在最早的 scanLimit 个排队任务中挑选，控制单次领取的扫描量。
+     */
+    @Select("<script>" +
+            "WITH running AS (" +
+            "  SELECT template_id, count(*) AS cnt FROM report_generation " +
+            "  WHERE status = 0 AND deleted = 0 AND claimed_by IS NOT NULL AND lease_expire_time &gt;= now() " +
+            "  GROUP BY template_id" +
+            "), candidates AS (" +
+            "  SELECT g.id, g.template_id, g.created_by, " +
+            "  ROW_NUMBER() OVER (PARTITION BY g.created_by ORDER BY g.id) AS user_rank, " +
+            "  ROW_NUMBER() OVER (PARTITION BY g.template_id ORDER BY g.id) AS template_rank " +
+            "  FROM (SELECT id, template_id, created_by FROM report_generation " +
+            "    WHERE status = 0 AND deleted = 0 AND stage = 'QUEUED' " +
+            "    AND (claimed_by IS NULL OR lease_expire_time &lt; now()) " +
+            "    AND COALESCE(attempt_count, 0) &lt; #{maxAttempts} " +
+            "    ORDER BY id LIMIT #{scanLimit}) g" +
+            "), picked AS (" +
+            "  SELECT c.id FROM candidates c " +
+            "  LEFT JOIN running r ON r.template_id = c.template_id " +
+            "  LEFT JOIN report_template t ON t.id = c.template_id " +
+            "  WHERE COALESCE(t.max_concurrency, #{defaultTemplateCap}) &lt;= 0 " +
+            "  OR c.template_rank + COALESCE(r.cnt, 0) &lt;= COALESCE(t.max_concurrency, #{defaultTemplateCap}) " +
+            "  ORDER BY c.user_rank::NUMERIC / " +
+            "<choose><when test='weights != null and !weights.isEmpty()'>" +
+            "CASE c.created_by <foreach collection='weights' index='user' item='weight'>WHEN #{user} THEN #{weight} </foreach>ELSE 1 END" +
+            "</when><otherwise>1</otherwise></choose>" +
+            ", c.id LIMIT #{limit}" +
+            ") " +
+            "UPDATE report_generation SET claimed_by = #{nodeId}, heartbeat_time = now(), " +
+            "lease_expire_time = now() + make_interval(secs => #{leaseSeconds}), " +
+            "attempt_count = COALESCE(attempt_count, 0) + 1 " +
+            "WHERE id IN (SELECT id FROM report_generation WHERE id IN (SELECT id FROM picked) " +
+            "AND status = 0 AND stage = 'QUEUED' AND (claimed_by IS NULL OR lease_expire_time &lt; now()) " +
+            "FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, template_id, created_by, create_time" +
+            "</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<ReportGeneration> claimQueued(@Param("nodeId") String nodeId, @Param("leaseSeconds") int leaseSeconds,
+                                       @Param("maxAttempts") int maxAttempts, @Param("limit") int limit,
+                                       @Param("scanLimit") int scanLimit,
+                                       @Param("defaultTemplateCap") int defaultTemplateCap,
+                                       @Param("weights") Map<String, Integer> weights);
+
+    /**
+     * 为本节点正在执行的任务续约，返回续约成功的记录ID；未返回的记录已被回收或由其他节点接管
+     */
+    @Select("<script>UPDATE report_generation SET heartbeat_time = now(), " +
+            "lease_expire_time = now() + make_interval(secs => #{leaseSeconds}) " +
+            "WHERE claimed_by = #{nodeId} AND status = 0 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> RETURNING id</script>")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<Long> renewLeases(@Param("nodeId") String nodeId, @Param("leaseSeconds") int leaseSeconds,
+                    @Param("ids") Collection<Long> ids);
+
+    /**
+     * 释放已领取但未能在本节点执行的任务
+     */
+    @Update("UPDATE report_generation SET claimed_by = NULL, lease_expire_time = NULL, " +
+            "attempt_count = GREATEST(COALESCE(attempt_count, 0) - 1, 0) " +
+            "WHERE id = #{id} AND claimed_by = #{nodeId} AND status = 0")
+    int releaseClaim(@Param("id") Long id, @Param("nodeId") String nodeId);
+
+    /**
+     * 租约过期（执行节点崩溃或失联）的任务重新排队
+     */
+    @Update("UPDATE report_generation SET stage = 'QUEUED', progress = 0, claimed_by = NULL, " +
+            "lease_expire_time = NULL, update_time = now() " +
+            "WHERE status = 0 AND deleted = 0 AND lease_expire_time < now() " +
+            "AND COALESCE(attempt_count, 0) < #{maxAttempts}")
+    int requeueExpired(@Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 多次领取仍未完成的任务标记为失败，避免反复拖垮执行节点
+     */
+    @Select("UPDATE report_generation SET status = 2, stage = 'FAILED', error_message = #{message}, update_time = now() " +
+            "WHERE status = 0 AND deleted = 0 AND lease_expire_time < now() " +
+            "AND COALESCE(attempt_count, 0) >= #{maxAttempts} RETURNING id")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<Long> failExhausted(@Param("maxAttempts") int maxAttempts, @Param("message") String message);
+
+    /**
+     * 统计排队中（未领取）的任务数，最多数到 cap 条
+     */
+    @Select("SELECT count(*) FROM (SELECT 1 FROM report_generation WHERE status = 0 AND deleted = 0 " +
+            "AND stage = 'QUEUED' AND claimed_by IS NULL LIMIT #{cap}) t")
+    long countQueuedCapped(@Param("cap") long cap);
+
+    /**
+     * 统计用户排队中（未领取）的任务数，最多数到 cap 条
+     */
+    @Select("SELECT count(*) FROM (SELECT 1 FROM report_generation WHERE status = 0 AND deleted = 0 " +
+            "AND stage = 'QUEUED' AND claimed_by IS NULL AND created_by = #{createdBy} LIMIT #{cap}) t")
+    long countQueuedByUserCapped(@Param("createdBy") String createdBy, @Param("cap") long cap);
+
+    /**
+     * 清除共用同一文件的全部记录（含已逻辑删除的）上的文件路径，文件已被删除时调用
+     */
+    @Update("UPDATE report_generation SET file_path = NULL WHERE id = #{sourceId} OR reused_from = #{sourceId}")
+    int clearFilePath(@Param("sourceId") Long sourceId);
+
+    /**
+     * 保留策略清理候选：模板下已结束的记录，cutoff 不为空时取早于 cutoff 的记录，否则取按时间倒序第 keep 条之后的记录
+     */
+    @Select("<script>SELECT id, template_id, file_path, file_size, execution_log_path, reused_from FROM report_generation " +
+            "WHERE template_id = #{templateId} AND deleted = 0 AND status IN (1, 2) " +
+            "<if test='cutoff != null'>AND create_time &lt; #{cutoff} ORDER BY create_time, id</if>" +
+            "<if test='cutoff == null'>ORDER BY create_time DESC, id DESC OFFSET #{keep}</if>" +
+            " LIMIT #{limit}</script>")
+    List<ReportGeneration> selectRetentionCandidates(@Param("templateId") Long templateId,
+                                                     @Param("cutoff") LocalDateTime cutoff,
+                                                     @Param("keep") long keep,
+                                                     @Param("limit") int limit);
+
+    /**
+     * 逻辑删除超过 cutoff 的记录（等待物理删除）
+     */
+    @Select("SELECT id, template_id, file_path, file_size, execution_log_path, reused_from FROM report_generation " +
+            "WHERE deleted = 1 AND update_time < #{cutoff} ORDER BY id LIMIT #{limit}")
+    List<ReportGeneration> selectPurgeableDeleted(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * 批次之外仍引用这些源记录文件的源记录ID（含已逻辑删除的记录），这些文件暂不删除
+     */
+    @Select("<script>SELECT DISTINCT COALESCE(reused_from, id) FROM report_generation " +
+            "WHERE (id IN <foreach collection='sourceIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "OR reused_from IN <foreach collection='sourceIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>) " +
+            "AND id NOT IN <foreach collection='excludeIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND file_path IS NOT NULL</script>")
+    List<Long> selectSharedSources(@Param("sourceIds") Collection<Long> sourceIds,
+                                   @Param("excludeIds") Collection<Long> excludeIds);
+
+    /**
+     * 物理删除生成记录（绕过逻辑删除）
+     */
+    @Delete("<script>DELETE FROM report_generation WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int hardDeleteByIds(@Param("ids") Collection<Long> ids);
 }
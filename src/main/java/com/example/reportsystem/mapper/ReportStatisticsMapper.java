@@ -0,0 +1,55 @@
+package com.example.reportsystem.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.reportsystem.entity.ReportStatistics;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface ReportStatisticsMapper extends BaseMapper<ReportStatistics> {
+
+    @Select("SELECT template_id, template_name, total_count, success_count, failure_count, total_duration_ms, " +
+            "bytes_stored, array_to_string(duration_histogram, ',') AS duration_histogram, update_time " +
+            "FROM report_statistics")
+    List<ReportStatistics> selectAllStatistics();
+
+    /**
+     * 把本节点的增量合并到汇总行，多个节点各自累加互不覆盖
+     */
+    @Insert("INSERT INTO report_statistics (template_id, template_name, total_count, success_count, failure_count, " +
+            "total_duration_ms, bytes_stored, duration_histogram, update_time) " +
+            "VALUES (#{templateId}, #{templateName}, #{totalCount}, #{successCount}, #{failureCount}, " +
+            "#{totalDurationMs}, #{bytesStored}, CAST(#{durationHistogram} AS BIGINT[]), now()) " +
+            "ON CONFLICT (template_id) DO UPDATE SET " +
+            "template_name = COALESCE(EXCLUDED.template_name, report_statistics.template_name), " +
+            "total_count = report_statistics.total_count + EXCLUDED.total_count, " +
+            "success_count = report_statistics.success_count + EXCLUDED.success_count, " +
+            "failure_count = report_statistics.failure_count + EXCLUDED.failure_count, " +
+            "total_duration_ms = report_statistics.total_duration_ms + EXCLUDED.total_duration_ms, " +
+            "bytes_stored = report_statistics.bytes_stored + EXCLUDED.bytes_stored, " +
+            "duration_histogram = ARRAY(SELECT COALESCE(a, 0) + COALESCE(b, 0) " +
+            "FROM unnest(report_statistics.duration_histogram, EXCLUDED.duration_histogram) WITH ORDINALITY AS t(a, b, i) ORDER BY i), " +
+            "update_time = now()")
+    int mergeDelta(ReportStatistics delta);
+
+    /**
+     * 首次启动时从生成记录汇总初始值（只扫描一次），已有汇总行时不覆盖
+     */
+    @Insert("INSERT INTO report_statistics (template_id, template_name, total_count, success_count, failure_count, " +
+            "total_duration_ms, bytes_stored, duration_histogram, update_time) " +
+            "SELECT template_id, max(template_name), count(*), " +
+            "count(*) FILTER (WHERE status = 1), count(*) FILTER (WHERE status = 2), " +
+            "COALESCE(sum(EXTRACT(EPOCH FROM (update_time - create_time)) * 1000), 0)::BIGINT, " +
+            "COALESCE(sum(file_size) FILTER (WHERE status = 1 AND reused_from IS NULL), 0), NULL, now() " +
+            "FROM report_generation WHERE deleted = 0 AND status IN (1, 2) AND template_id IS NOT NULL GROUP BY template_id " +
+            "UNION ALL " +
+            "SELECT 0, NULL, count(*), count(*) FILTER (WHERE status = 1), count(*) FILTER (WHERE status = 2), " +
+            "COALESCE(sum(EXTRACT(EPOCH FROM (update_time - create_time)) * 1000), 0)::BIGINT, " +
+            "COALESCE(sum(file_size) FILTER (WHERE status = 1 AND reused_from IS NULL), 0), NULL, now() " +
+            "FROM report_generation WHERE deleted = 0 AND status IN (1, 2) " +
+            "ON CONFLICT (template_id) DO NOTHING")
+    int bootstrapFromGenerations();
+}
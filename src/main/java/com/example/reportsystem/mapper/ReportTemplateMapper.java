@@ -3,7 +3,15 @@ package com.example.reportsystem.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.reportsystem.entity.ReportTemplate;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 @Mapper
 public interface ReportTemplateMapper extends BaseMapper<ReportTemplate> {
+
+    /**
+     * 通过 Postgres NOTIFY 通知其他节点模板已变更（自动提交下立即送达）
+     */
+    @Select("SELECT pg_notify(#{channel}, #{payload})")
+    String notifyChange(@Param("channel") String channel, @Param("payload") String payload);
 }
@@ -0,0 +1,121 @@
+package com.example.reportsystem.metrics;
+
+import com.example.reportsystem.entity.ReportTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 报表生成流水线指标
+ * report.generation.stage：各阶段耗时（stage = lookup/download/fetch/script/compile/render/write/upload），
+ * report.generation：整次生成耗时，均按模板和结果打标签并发布直方图，便于按模板计算 p95/p99；
+ * report.generation.fallback：接口失败回退到手动数据的次数；report.generation.in_flight：正在生成的数量；
+ * report.generation.queue.wait：异步任务排队时间（按模板和用户权重）；report.generation.rejected：限流拒绝次数。
+ */
+@Component
+public class GenerationMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_REUSED = "reused";
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface StageCallable<T> {
+        T call() throws Exception;
+    }
+
+    public GenerationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("report.generation.in_flight", inFlight, AtomicInteger::get)
+                .description("正在执行的报表生成数量")
+                .register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stopStage(Timer.Sample sample, String stage, Long templateId, String templateName, String outcome) {
+        sample.stop(Timer.builder("report.generation.stage")
+                .description("报表生成各阶段耗时")
+                .tag("stage", stage)
+                .tag("template_id", templateId != null ? String.valueOf(templateId) : "unknown")
+                .tag("template", templateName != null ? templateName : "unknown")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void stopStage(Timer.Sample sample, String stage, ReportTemplate template, String outcome) {
+        stopStage(sample, stage, template.getId(), template.getName(), outcome);
+    }
+
+    public <T> T timeStage(String stage, ReportTemplate template, StageCallable<T> callable) throws Exception {
+        Timer.Sample sample = start();
+        String outcome = OUTCOME_ERROR;
+        try {
+            T result = callable.call();
+            outcome = OUTCOME_SUCCESS;
+            return result;
+        } finally {
+            stopStage(sample, stage, template, outcome);
+        }
+    }
+
+    public void stopGeneration(Timer.Sample sample, ReportTemplate template, String outcome) {
+        sample.stop(Timer.builder("report.generation")
+                .description("报表生成总耗时")
+                .tag("template_id", String.valueOf(template.getId()))
+                .tag("template", template.getName() != null ? template.getName() : "unknown")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void incrementFallback(ReportTemplate template) {
+        Counter.builder("report.generation.fallback")
+                .description("接口数据获取失败回退到手动数据的次数")
+                .tag("template_id", String.valueOf(template.getId()))
+                .tag("template", template.getName() != null ? template.getName() : "unknown")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 任务从提交到被领取的排队时间，按模板和用户权重（公平队列的权重档位）打标签；
+     * 不按用户名打标签，避免直方图序列随用户数无限增长
+     */
+    public void recordQueueWait(int userWeight, Long templateId, Duration wait) {
+        Timer.builder("report.generation.queue.wait")
+                .description("异步生成任务排队等待时间")
+                .tag("weight", String.valueOf(userWeight))
+                .tag("template_id", String.valueOf(templateId))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(wait.isNegative() ? Duration.ZERO : wait);
+    }
+
+    public void incrementRejected(String reason) {
+        Counter.builder("report.generation.rejected")
+                .description("被限流或排队已满拒绝的生成请求数")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    public void generationStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void generationFinished() {
+        inFlight.decrementAndGet();
+    }
+}
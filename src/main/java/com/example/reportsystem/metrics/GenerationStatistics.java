@@ -0,0 +1,436 @@
+package com.example.reportsystem.metrics;
+
+import com.example.reportsystem.entity.ReportStatistics;
+import com.example.reportsystem.mapper.ReportStatisticsMapper;
+import com.example.reportsystem.mapper.ReportTemplateMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 概览页统计：生成完成时在内存中累加增量，按 checkpoint-interval 合并到 report_statistics，
+ * 概览页读取“上次检查点 + 本节点未合并增量”，不再对 report_generation 做全表 count。
+ * 合并语句是累加式的，多个节点各自写入增量不会互相覆盖；首次启动时从历史记录汇总一次初始值。
+ * 检查点合并时增量先保留在 pending 中，重新加载检查点后再在写锁内扣减，概览页不会漏掉或重复计入正在合并的增量。
+ */
+@Slf4j
+@Component
+public class GenerationStatistics {
+
+    /**
+     * 全部模板汇总行的 templateId
+     */
+    public static final long GLOBAL_ID = 0L;
+
+    /**
+     * 耗时直方图桶上界（毫秒），最后一个桶收集超过 5 分钟的生成
+     */
+    private static final long[] BUCKET_BOUNDS = {
+            50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000, 300000, Long.MAX_VALUE
+    };
+
+    private static final int THROUGHPUT_MINUTES = 60;
+
+    @Autowired
+    private ReportStatisticsMapper statisticsMapper;
+
+    @Autowired
+    private ReportTemplateMapper templateMapper;
+
+    /**
+     * 最近一次从数据库读取的检查点
+     */
+    private volatile Map<Long, ReportStatistics> baseline = Collections.emptyMap();
+
+    /**
+     * 尚未合并到数据库的增量
+     */
+    private final ConcurrentHashMap<Long, Delta> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 已合并到数据库、但检查点重新加载失败而尚未体现在 baseline 中的增量
+     */
+    private Map<Long, Delta> unreloaded = new HashMap<>();
+
+    /**
+     * 读锁：概览页读取 baseline + unreloaded + pending；写锁：检查点替换 baseline 并扣减已合并的增量
+     */
+    private final ReadWriteLock viewLock = new ReentrantReadWriteLock();
+
+    /**
+     * 最近一小时每分钟完成数（本节点），下标为 分钟 % 60，minuteStamps 记录该槽位所属的分钟
+     */
+    private final AtomicLongArray throughput = new AtomicLongArray(THROUGHPUT_MINUTES);
+    private final AtomicLongArray minuteStamps = new AtomicLongArray(THROUGHPUT_MINUTES);
+
+    private volatile long templateCount;
+
+    private static class Delta {
+        String templateName;
+        long total;
+        long success;
+        long failure;
+        long durationMs;
+        long bytes;
+        final long[] histogram = new long[BUCKET_BOUNDS.length];
+
+        void mergeFrom(Delta other) {
+            if (other.templateName != null) {
+                templateName = other.templateName;
+            }
+            total += other.total;
+            success += other.success;
+            failure += other.failure;
+            durationMs += other.durationMs;
+            bytes += other.bytes;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        void subtract(Delta other) {
+            total -= other.total;
+            success -= other.success;
+            failure -= other.failure;
+            durationMs -= other.durationMs;
+            bytes -= other.bytes;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] -= other.histogram[i];
+            }
+        }
+
+        boolean isEmpty() {
+            return total == 0 && durationMs == 0 && bytes == 0;
+        }
+
+        ReportStatistics toEntity(Long templateId) {
+            ReportStatistics stats = new ReportStatistics();
+            stats.setTemplateId(templateId);
+            stats.setTemplateName(templateName);
+            stats.setTotalCount(total);
+            stats.setSuccessCount(success);
+            stats.setFailureCount(failure);
+            stats.setTotalDurationMs(durationMs);
+            stats.setBytesStored(bytes);
+            stats.setDurationHistogram(histogramLiteral(histogram));
+            return stats;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        try {
+            if (statisticsMapper.selectCount(null) == 0) {
+                int rows = statisticsMapper.bootstrapFromGenerations();
+                log.info("已从历史生成记录初始化统计汇总，共 {} 行", rows);
+            }
+            reload();
+        } catch (Exception e) {
+            log.warn("加载生成统计失败，将在下次检查点重试: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一次完成的生成（成功、失败或复用）
+     *
+     * @param fileSize 新增存储的字节数，复用已有文件时为 0
+     */
+    public void record(Long templateId, String templateName, boolean success, long durationMs, long fileSize) {
+        int bucket = bucketOf(durationMs);
+        if (templateId != null) {
+            apply(templateId, templateName, success, durationMs, fileSize, bucket);
+        }
+        apply(GLOBAL_ID, null, success, durationMs, fileSize, bucket);
+        tickThroughput();
+    }
+
+    /**
+     * 删除生成记录后扣减存储量（仅在确实删除了文件时调用）
+     */
+    public void recordDeleted(Long templateId, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        if (templateId != null) {
+            pending.compute(templateId, (id, delta) -> {
+                Delta d = delta != null ? delta : new Delta();
+                d.bytes -= bytes;
+                return d;
+            });
+        }
+        pending.compute(GLOBAL_ID, (id, delta) -> {
+            Delta d = delta != null ? delta : new Delta();
+            d.bytes -= bytes;
+            return d;
+        });
+    }
+
+    private void apply(Long key, String templateName, boolean success, long durationMs, long fileSize, int bucket) {
+        pending.compute(key, (id, delta) -> {
+            Delta d = delta != null ? delta : new Delta();
+            if (templateName != null) {
+                d.templateName = templateName;
+            }
+            d.total++;
+            if (success) {
+                d.success++;
+            } else {
+                d.failure++;
+            }
+            d.durationMs += Math.max(0, durationMs);
+            d.bytes += Math.max(0, fileSize);
+            d.histogram[bucket]++;
+            return d;
+        });
+    }
+
+    private void tickThroughput() {
+        long minute = System.currentTimeMillis() / 60000;
+        int slot = (int) (minute % THROUGHPUT_MINUTES);
+        long stamp = minuteStamps.get(slot);
+        if (stamp != minute && minuteStamps.compareAndSet(slot, stamp, minute)) {
+            throughput.set(slot, 0);
+        }
+        throughput.incrementAndGet(slot);
+    }
+
+    /**
+     * 把增量合并到数据库并刷新检查点
+     */
+    @Scheduled(initialDelayString = "${report.statistics.checkpoint-interval:60000}",
+            fixedDelayString = "${report.statistics.checkpoint-interval:60000}")
+    public synchronized void checkpoint() {
+        // 合并的是增量快照，增量本身留在 pending 中，直到新的检查点可见后再扣减
+        Map<Long, Delta> merged = new HashMap<>();
+        for (Long templateId : new ArrayList<>(pending.keySet())) {
+            Delta snapshot = new Delta();
+            pending.computeIfPresent(templateId, (id, delta) -> {
+                snapshot.mergeFrom(delta);
+                return delta;
+            });
+            if (snapshot.isEmpty()) {
+                continue;
+            }
+            try {
+                statisticsMapper.mergeDelta(snapshot.toEntity(templateId));
+                merged.put(templateId, snapshot);
+            } catch (Exception e) {
+                log.warn("合并生成统计失败，templateId={}: {}", templateId, e.getMessage());
+            }
+        }
+
+        Map<Long, ReportStatistics> loaded = null;
+        try {
+            loaded = loadBaseline();
+        } catch (Exception e) {
+            log.warn("刷新生成统计失败: {}", e.getMessage());
+        }
+
+        viewLock.writeLock().lock();
+        try {
+            merged.forEach((templateId, snapshot) -> pending.computeIfPresent(templateId, (id, delta) -> {
+                delta.subtract(snapshot);
+                return delta.isEmpty() ? null : delta;
+            }));
+            if (loaded != null) {
+                baseline = loaded;
+                unreloaded = new HashMap<>();
+            } else {
+                merged.forEach((templateId, snapshot) -> unreloaded.merge(templateId, snapshot, (current, added) -> {
+                    current.mergeFrom(added);
+                    return current;
+                }));
+            }
+        } finally {
+            viewLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checkpoint();
+    }
+
+    private void reload() {
+        Map<Long, ReportStatistics> loaded = loadBaseline();
+        viewLock.writeLock().lock();
+        try {
+            baseline = loaded;
+            unreloaded = new HashMap<>();
+        } finally {
+            viewLock.writeLock().unlock();
+        }
+    }
+
+    private Map<Long, ReportStatistics> loadBaseline() {
+        Map<Long, ReportStatistics> loaded = new HashMap<>();
+        for (ReportStatistics stats : statisticsMapper.selectAllStatistics()) {
+            loaded.put(stats.getTemplateId(), stats);
+        }
+        templateCount = templateMapper.selectCount(null);
+        return loaded;
+    }
+
+    /**
+     * 概览页数据：检查点 + 本节点未合并的增量
+     */
+    public Map<String, Object> getDashboard() {
+        viewLock.readLock().lock();
+        try {
+            return buildDashboard();
+        } finally {
+            viewLock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> buildDashboard() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Object> global = view(GLOBAL_ID);
+        result.put("templateCount", templateCount);
+        result.putAll(global);
+        result.put("lastHourCount", lastHourThroughput());
+
+        List<Map<String, Object>> templates = new ArrayList<>();
+        List<Long> ids = new ArrayList<>(baseline.keySet());
+        for (Long id : unreloaded.keySet()) {
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        for (Long id : pending.keySet()) {
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        for (Long id : ids) {
+            if (id == GLOBAL_ID) {
+                continue;
+            }
+            Map<String, Object> item = view(id);
+            item.put("templateId", id);
+            templates.add(item);
+        }
+        templates.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("generationCount")).reversed());
+        result.put("templates", templates);
+        return result;
+    }
+
+    private Map<String, Object> view(Long templateId) {
+        Delta merged = new Delta();
+        ReportStatistics base = baseline.get(templateId);
+        if (base != null) {
+            merged.templateName = base.getTemplateName();
+            merged.total = nvl(base.getTotalCount());
+            merged.success = nvl(base.getSuccessCount());
+            merged.failure = nvl(base.getFailureCount());
+            merged.durationMs = nvl(base.getTotalDurationMs());
+            merged.bytes = nvl(base.getBytesStored());
+            long[] hist = parseHistogram(base.getDurationHistogram());
+            System.arraycopy(hist, 0, merged.histogram, 0, Math.min(hist.length, merged.histogram.length));
+        }
+        Delta flushed = unreloaded.get(templateId);
+        if (flushed != null) {
+            merged.mergeFrom(flushed);
+        }
+        pending.computeIfPresent(templateId, (id, delta) -> {
+            merged.mergeFrom(delta);
+            return delta;
+        });
+
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("templateName", merged.templateName);
+        view.put("generationCount", merged.total);
+        view.put("successCount", merged.success);
+        view.put("failureCount", merged.failure);
+        view.put("successRate", merged.total > 0 ? Math.round(merged.success * 1000.0 / merged.total) / 10.0 : 0.0);
+        view.put("avgDurationMs", merged.total > 0 ? merged.durationMs / merged.total : 0L);
+        view.put("p95DurationMs", percentile(merged.histogram, 0.95));
+        view.put("bytesStored", Math.max(0, merged.bytes));
+        return view;
+    }
+
+    private long lastHourThroughput() {
+        long minute = System.currentTimeMillis() / 60000;
+        long total = 0;
+        for (int i = 0; i < THROUGHPUT_MINUTES; i++) {
+            if (minute - minuteStamps.get(i) < THROUGHPUT_MINUTES) {
+                total += throughput.get(i);
+            }
+        }
+        return total;
+    }
+
+    private static int bucketOf(long durationMs) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (durationMs <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length - 1;
+    }
+
+    /**
+     * 按直方图估算分位数，返回所在桶的上界（最后一个桶返回其下界）；只有历史汇总没有分布时返回 null
+     */
+    private static Long percentile(long[] histogram, double quantile) {
+        long count = 0;
+        for (long c : histogram) {
+            count += c;
+        }
+        if (count == 0) {
+            return null;
+        }
+        long target = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target) {
+                return i < BUCKET_BOUNDS.length - 1 ? BUCKET_BOUNDS[i] : BUCKET_BOUNDS[BUCKET_BOUNDS.length - 2];
+            }
+        }
+        return BUCKET_BOUNDS[BUCKET_BOUNDS.length - 2];
+    }
+
+    private static String histogramLiteral(long[] histogram) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(histogram[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static long[] parseHistogram(String value) {
+        if (value == null || value.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = value.split(",");
+        long[] result = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Long.parseLong(parts[i].trim());
+        }
+        return result;
+    }
+
+    private static long nvl(Long value) {
+        return value != null ? value : 0L;
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.reportsystem.render;
+
+import com.deepoove.poi.XWPFTemplate;
+import com.deepoove.poi.data.TextRenderData;
+import com.deepoove.poi.data.style.Style;
+import com.deepoove.poi.exception.RenderException;
+import com.deepoove.poi.plugin.table.LoopRowTableRenderPolicy;
+import com.deepoove.poi.policy.RenderPolicy;
+import com.deepoove.poi.render.compute.EnvModel;
+import com.deepoove.poi.render.compute.RenderDataCompute;
+import com.deepoove.poi.render.compute.RenderDataComputeFactory;
+import com.deepoove.poi.render.processor.EnvIterator;
+import com.deepoove.poi.resolver.TemplateResolver;
+import com.deepoove.poi.template.ElementTemplate;
+import com.deepoove.poi.template.MetaTemplate;
+import com.deepoove.poi.template.run.RunTemplate;
+import com.deepoove.poi.util.ReflectionUtils;
+import com.deepoove.poi.util.StyleUtils;
+import com.deepoove.poi.util.TableTools;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRow;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTc;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMerge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * 大数据量表格行循环策略，标签写法与 LoopRowTableRenderPolicy 相同（{{list}} 所在行的下一行为模板行，单元格内写 [field]）
+ * <p>
+ * LoopRowTableRenderPolicy 每一行都会创建 XWPFTableRow/Cell/Paragraph/Run 包装对象，并对每个单元格重新解析 [field] 标签。
+ * 这里模板行只解析一次，记下每个标签所在的 (单元格, 段落, run) 位置，之后每行只复制一次模板行的 XML 并直接改写对应 run 的文本，
+ * 每行的临时对象只有一次数据取值。数据可以是 Iterable、Iterator 或 Stream，按需逐行消费，不要求先整体物化成 List。
+ * 单元格值与 LoopRowTableRenderPolicy 的文本渲染一致：TextRenderData 的样式（颜色、加粗等）和换行符 "\n" 会保留，
+ * 超链接按带样式的普通文本输出。
+ * <p>
+ * 限制：模板行只支持文本标签（[field]、[=field]），图片、嵌套表格等情况会退回 LoopRowTableRenderPolicy；
+ * 生成的行不会注册到 XWPFTable 的行包装列表中，同一表格内不能再有另一个行循环标签。
+ * 文档本身仍是 POI 的内存 DOM，峰值内存随行数线性增长，这里减少的是每行的对象开销和解析耗时。
+ */
+public class StreamingRowTableRenderPolicy implements RenderPolicy {
+
+    private static final char TEXT_SIGN = '\0';
+    private static final char TEXT_ALIAS_SIGN = '=';
+
+    private final String prefix;
+    private final String suffix;
+
+    public StreamingRowTableRenderPolicy() {
+        this("[", "]");
+    }
+
+    public StreamingRowTableRenderPolicy(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * 模板行中一个文本标签的位置
+     */
+    private static class Slot {
+        private final int cell;
+        private final int paragraph;
+        private final int run;
+        private final String tagName;
+        /**
+         * 模板行中标签所在段落，只用作设置样式时临时 XWPFRun 的父对象（与复制出的行属于同一文档）
+         */
+        private final XWPFParagraph parent;
+
+        Slot(int cell, int paragraph, int run, String tagName, XWPFParagraph parent) {
+            this.cell = cell;
+            this.paragraph = paragraph;
+            this.run = run;
+            this.tagName = tagName;
+            this.parent = parent;
+        }
+    }
+
+    @Override
+    public void render(ElementTemplate eleTemplate, Object data, XWPFTemplate template) {
+        RunTemplate runTemplate = (RunTemplate) eleTemplate;
+        XWPFRun run = runTemplate.getRun();
+        if (!TableTools.isInsideTable(run)) {
+            throw new RenderException("表格循环标签 " + runTemplate.getSource() + " 必须位于表格内");
+        }
+        XWPFTableCell tagCell = (XWPFTableCell) ((XWPFParagraph) run.getParent()).getBody();
+        XWPFTable table = tagCell.getTableRow().getTable();
+        int templateRowIndex = table.getRows().indexOf(tagCell.getTableRow()) + 1;
+        if (templateRowIndex >= table.getRows().size()) {
+            throw new RenderException("表格循环标签 " + runTemplate.getSource() + " 下方缺少模板行");
+        }
+        XWPFTableRow templateRow = table.getRow(templateRowIndex);
+
+        TemplateResolver resolver = new TemplateResolver(template.getConfig().copy(prefix, suffix));
+        List<Slot> slots = resolveSlots(templateRow, resolver);
+        if (slots == null) {
+            new LoopRowTableRenderPolicy(prefix, suffix).render(eleTemplate, materialize(data), template);
+            return;
+        }
+
+        try {
+            run.setText("", 0);
+            CTRow templateCt = templateRow.getCtRow();
+            List<Integer> restartCells = restartMergeCells(templateCt);
+            RenderDataComputeFactory computeFactory = template.getConfig().getRenderDataComputeFactory();
+
+            Iterator<?> iterator = iterator(data);
+            try {
+                int index = 0;
+                boolean hasNext = iterator.hasNext();
+                while (hasNext) {
+                    Object root = iterator.next();
+                    hasNext = iterator.hasNext();
+
+                    CTRow row = insertCopyBefore(templateCt);
+                    if (index > 0) {
+                        for (Integer cell : restartCells) {
+                            row.getTcArray(cell).getTcPr().getVMerge().setVal(STMerge.CONTINUE);
+                        }
+                    }
+
+                    RenderDataCompute compute = computeFactory.newCompute(
+                            EnvModel.of(root, EnvIterator.makeEnv(index++, hasNext)));
+                    for (Slot slot : slots) {
+                        CTR ctr = row.getTcArray(slot.cell).getPArray(slot.paragraph).getRArray(slot.run);
+                        writeCell(ctr, slot.parent, compute.compute(slot.tagName));
+                    }
+                }
+            } finally {
+                closeQuietly(data);
+            }
+
+            // 删除模板行：XML 用游标删除，行包装列表同步移除
+            XmlCursor remove = templateCt.newCursor();
+            remove.removeXml();
+            remove.dispose();
+            @SuppressWarnings("unchecked")
+            List<XWPFTableRow> rows = (List<XWPFTableRow>) ReflectionUtils.getValue("tableRows", table);
+            rows.remove(templateRow);
+        } catch (RenderException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RenderException("大数据量表格渲染失败 " + eleTemplate + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解析模板行中的标签位置，并把每个标签 run 规整为单个 w:t；遇到不支持的写法返回 null
+     */
+    private List<Slot> resolveSlots(XWPFTableRow templateRow, TemplateResolver resolver) {
+        CTRow ctRow = templateRow.getCtRow();
+        List<CTTc> ctCells = ctRow.getTcList();
+        List<Slot> slots = new ArrayList<>();
+        for (XWPFTableCell cell : templateRow.getTableCells()) {
+            int cellIndex = ctCells.indexOf(cell.getCTTc());
+            List<MetaTemplate> templates = resolver.resolveBodyElements(cell.getBodyElements());
+            for (MetaTemplate meta : templates) {
+                if (!(meta instanceof RunTemplate)) {
+                    return null;
+                }
+                RunTemplate tag = (RunTemplate) meta;
+                Character sign = tag.getSign();
+                if (sign != null && sign != TEXT_SIGN && sign != TEXT_ALIAS_SIGN) {
+                    return null;
+                }
+                XWPFRun tagRun = tag.getRun();
+                if (!(tagRun.getParent() instanceof XWPFParagraph)) {
+                    return null;
+                }
+                XWPFParagraph paragraph = (XWPFParagraph) tagRun.getParent();
+                int paragraphIndex = cell.getCTTc().getPList().indexOf(paragraph.getCTP());
+                int runIndex = paragraph.getCTP().getRList().indexOf(tagRun.getCTR());
+                if (cellIndex < 0 || paragraphIndex < 0 || runIndex < 0) {
+                    return null;
+                }
+                tagRun.setText(tag.getSource(), 0);
+                CTR ctr = tagRun.getCTR();
+                for (int i = ctr.sizeOfTArray() - 1; i > 0; i--) {
+                    ctr.removeT(i);
+                }
+                CTText text = ctr.getTArray(0);
+                text.setSpace(SpaceAttribute.Space.PRESERVE);
+                slots.add(new Slot(cellIndex, paragraphIndex, runIndex, tag.getTagName(), paragraph));
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * 在模板行之前插入一份模板行的拷贝并返回它。
+     * 用游标就地插入，避免 CTTbl.insertNewTr(pos) 每次按下标查找子元素导致的 O(n²)
+     */
+    private static CTRow insertCopyBefore(CTRow templateCt) {
+        XmlCursor source = templateCt.newCursor();
+        XmlCursor target = templateCt.newCursor();
+        try {
+            source.copyXml(target);
+        } finally {
+            source.dispose();
+            target.dispose();
+        }
+        XmlCursor cursor = templateCt.newCursor();
+        try {
+            cursor.toPrevSibling();
+            return (CTRow) cursor.getObject();
+        } finally {
+            cursor.dispose();
+        }
+    }
+
+    private List<Integer> restartMergeCells(CTRow templateCt) {
+        List<Integer> cells = new ArrayList<>();
+        for (int i = 0; i < templateCt.sizeOfTcArray(); i++) {
+            CTTcPr tcPr = templateCt.getTcArray(i).getTcPr();
+            if (tcPr != null && tcPr.getVMerge() != null && STMerge.RESTART == tcPr.getVMerge().getVal()) {
+                cells.add(i);
+            }
+        }
+        return cells;
+    }
+
+    private static Iterator<?> iterator(Object data) {
+        if (data == null) {
+            return Collections.emptyIterator();
+        }
+        if (data instanceof Iterable) {
+            return ((Iterable<?>) data).iterator();
+        }
+        if (data instanceof Iterator) {
+            return (Iterator<?>) data;
+        }
+        if (data instanceof BaseStream) {
+            return ((BaseStream<?, ?>) data).iterator();
+        }
+        throw new RenderException("表格循环数据必须是 Iterable、Iterator 或 Stream: " + data.getClass().getName());
+    }
+
+    private static Object materialize(Object data) {
+        if (data == null || data instanceof Iterable) {
+            return data;
+        }
+        Iterator<?> iterator = iterator(data);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .collect(Collectors.toList());
+    }
+
+    private static void closeQuietly(Object data) {
+        if (data instanceof BaseStream) {
+            ((BaseStream<?, ?>) data).close();
+        }
+    }
+
+    /**
+     * 写入单元格文本：普通文本直接改写 w:t；含换行时按行拆分为 w:t + w:br，TextRenderData 带样式时设置 run 样式
+     */
+    private static void writeCell(CTR ctr, XWPFParagraph parent, Object value) {
+        String text = toText(value);
+        Style style = value instanceof TextRenderData ? ((TextRenderData) value).getStyle() : null;
+        if (style == null && text.indexOf('\n') < 0) {
+            ctr.getTArray(0).setStringValue(text);
+            return;
+        }
+
+        String[] lines = text.split("\r?\n", -1);
+        ctr.getTArray(0).setStringValue(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            ctr.addNewBr();
+            CTText line = ctr.addNewT();
+            line.setSpace(SpaceAttribute.Space.PRESERVE);
+            line.setStringValue(lines[i]);
+        }
+        if (style != null) {
+            StyleUtils.styleRun(new XWPFRun(ctr, parent), style);
+        }
+    }
+
+    private static String toText(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof TextRenderData) {
+            String text = ((TextRenderData) value).getText();
+            return text != null ? text : "";
+        }
+        return value.toString();
+    }
+}
@@ -1,90 +1,225 @@
 package com.example.reportsystem.service;
 
+import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.deepoove.poi.XWPFTemplate;
 import com.deepoove.poi.config.Configure;
 import com.deepoove.poi.config.ConfigureBuilder;
 import com.deepoove.poi.plugin.table.LoopRowTableRenderPolicy;
+import com.example.reportsystem.cache.DataSourceCache;
+import com.example.reportsystem.cache.GroovyScriptCache;
+import com.example.reportsystem.cache.TemplateFileCache;
+import com.example.reportsystem.datasource.DataSourceFetcher;
 import com.example.reportsystem.entity.ReportGeneration;
 import com.example.reportsystem.entity.ReportTemplate;
+import com.example.reportsystem.job.GenerationArchiver;
+import com.example.reportsystem.job.GenerationEventBroadcaster;
+import com.example.reportsystem.job.GenerationJobExecutor;
+import com.example.reportsystem.job.GenerationScheduler;
+import com.example.reportsystem.mapper.ReportGenerationArchiveFileMapper;
 import com.example.reportsystem.mapper.ReportGenerationMapper;
+import com.example.reportsystem.metrics.GenerationMetrics;
+import com.example.reportsystem.metrics.GenerationStatistics;
+import com.example.reportsystem.render.StreamingRowTableRenderPolicy;
+import com.example.reportsystem.util.JsonDigest;
 import com.example.reportsystem.util.ScriptLogger;
+import io.micrometer.core.instrument.Timer;
 import io.minio.*;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper, ReportGeneration> {
 
+    /**
+     * 列表页只需要的摘要字段，不查询 request_data、response_data、execution_log 等大文本
+     */
+    private static final String[] SUMMARY_COLUMNS = {
+            "id", "template_id", "template_name", "file_name", "file_size", "data_source", "status",
+            "stage", "progress", "reused_from", "created_by", "create_time", "update_time"
+    };
+
     @Autowired
     private MinioClient minioClient;
 
     @Autowired
     private ReportTemplateService templateService;
 
+    @Autowired
+    private TemplateFileCache templateFileCache;
+
+    @Autowired
+    private GroovyScriptCache groovyScriptCache;
+
+    @Autowired
+    private DataSourceCache dataSourceCache;
+
+    @Autowired
+    private DataSourceFetcher dataSourceFetcher;
+
+    @Autowired
+    private GenerationJobExecutor generationJobExecutor;
+
+    @Autowired
+    private GenerationMetrics generationMetrics;
+
+    @Autowired
+    private GenerationStatistics generationStatistics;
+
+    @Autowired
+    private GenerationScheduler generationScheduler;
+
+    @Autowired
+    private GenerationEventBroadcaster generationEventBroadcaster;
+
+    @Autowired
+    private GenerationArchiver generationArchiver;
+
+    @Autowired
+    private ReportGenerationArchiveFileMapper archiveFileMapper;
+
     @Value("${minio.bucketName:report-files}")
     private String bucketName;
 
     @Value("${minio.templateBucketName:report-templates}")
     private String templateBucketName;
 
-    @Value("${word-service.timeout:30000}")
-    private int wordServiceTimeout;
+    @Value("${report.generation.async.stale-timeout:600}")
+    private long staleTimeoutSeconds;
 
-    private OkHttpClient httpClient;
-    private ScriptEngineManager scriptEngineManager;
+    @Value("${report.generation.async.lease-seconds:60}")
+    private int leaseSeconds;
 
-    public ReportGenerationService() {
-        try {
-            // 信任所有证书
-            javax.net.ssl.TrustManager[] trustAllCerts = new javax.net.ssl.TrustManager[]{
-                new javax.net.ssl.X509TrustManager() {
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                        return new java.security.cert.X509Certificate[]{};
-                    }
-                    public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                    }
-                    public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) {
-                    }
-                }
-            };
-
-            javax.net.ssl.SSLContext sslContext = javax.net.ssl.SSLContext.getInstance("SSL");
-            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-            javax.net.ssl.SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-
-            this.httpClient = new OkHttpClient.Builder()
-                    .connectTimeout(wordServiceTimeout, TimeUnit.MILLISECONDS)
-                    .readTimeout(wordServiceTimeout, TimeUnit.MILLISECONDS)
-                    .sslSocketFactory(sslSocketFactory, (javax.net.ssl.X509TrustManager) trustAllCerts[0])
-                    .hostnameVerifier((hostname, session) -> true)
-                    .build();
-        } catch (Exception e) {
-            log.error("初始化HTTP客户端失败", e);
-            this.httpClient = new OkHttpClient.Builder()
-                    .connectTimeout(wordServiceTimeout, TimeUnit.MILLISECONDS)
-                    .readTimeout(wordServiceTimeout, TimeUnit.MILLISECONDS)
-                    .build();
+    @Value("${report.generation.async.heartbeat-interval:15000}")
+    private long heartbeatIntervalMillis;
+
+    @Value("${report.generation.async.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${report.generation.async.max-queued:1000}")
+    private long maxQueued;
+
+    @Value("${report.render.memory-threshold:4194304}")
+    private int renderMemoryThreshold;
+
+    @Value("${report.render.streaming-table-threshold:5000}")
+    private int streamingTableThreshold;
+
+    @Value("${report.render.temp-dir:}")
+    private String renderTempDir;
+
+    @Value("${report.generation.idempotency.enabled:false}")
+    private boolean idempotencyEnabled;
+
+    @Value("${report.generation.idempotency.window:600}")
+    private long idempotencyWindowSeconds;
+
+    @Value("${report.generation.idempotency.wait-timeout:300}")
+    private long idempotencyWaitSeconds;
+
+    private final Map<String, CompletableFuture<ReportGeneration>> inFlightByIdempotencyKey = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点正在执行的生成记录（含同步、批量生成）及其执行线程，心跳时为它们续约，续约失败时中断执行线程
+     */
+    private final Map<Long, Thread> localGenerations = new ConcurrentHashMap<>();
+
+    /**
+     * 已失去租约（已被回收或由其他节点接管）的本地执行记录，这些执行不再写回结果
+     */
+    private final Set<Long> leaseLostIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 续约使用独立线程，不与其他 @Scheduled 任务共用调度线程，长时间的维护任务不会耽误续约
+     */
+    private final ScheduledExecutorService leaseRenewer =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("report-lease-"));
+
+    @PostConstruct
+    public void startHeartbeat() {
+        if (leaseSeconds * 1000L < heartbeatIntervalMillis * 2) {
+            log.warn("lease-seconds（{} 秒）小于两倍 heartbeat-interval（{} 毫秒），一次续约延迟就可能导致任务被其他节点重复执行",
+                    leaseSeconds, heartbeatIntervalMillis);
         }
-        this.scriptEngineManager = new ScriptEngineManager();
+        leaseRenewer.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMillis, heartbeatIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopHeartbeat() {
+        leaseRenewer.shutdownNow();
     }
 
+    @Value("${report.generation.response-data-max-rows:100}")
+    private int responseDataMaxRows;
+
+    @Value("${report.generation.batch.max-items:1000}")
+    private int batchMaxItems;
+
+    @Value("${report.generation.list.max-page-size:100}")
+    private int listMaxPageSize;
+
+    @Value("${report.generation.list.count-cap:10000}")
+    private long listCountCap;
+
+    @Value("${report.generation.log.inline-max-chars:65536}")
+    private int logInlineMaxChars;
+
+    @Value("${report.script.log.capacity:5000}")
+    private int scriptLogCapacity;
+
+    @Value("${report.script.log.debug-limit:1000}")
+    private int scriptLogDebugLimit;
+
+    @Value("${report.script.log.info-limit:3000}")
+    private int scriptLogInfoLimit;
+
+    @Value("${report.script.log.warn-limit:1000}")
+    private int scriptLogWarnLimit;
+
+    private volatile boolean bucketReady;
+
     public void initBucket() {
+        if (bucketReady) {
+            return;
+        }
         try {
             if (!minioClient.bucketExists(BucketExistsArgs.builder()
                     .bucket(bucketName)
@@ -94,6 +229,7 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
                         .build());
                 log.info("创建生成文件存储桶成功: {}", bucketName);
             }
+            bucketReady = true;
         } catch (Exception e) {
             log.error("初始化存储桶失败", e);
         }
@@ -113,34 +249,344 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
         }
     }
 
+    private byte[] loadTemplateFile(ReportTemplate template) {
+        try {
+            return generationMetrics.timeStage("download", template, () -> readTemplateFile(template));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private byte[] readTemplateFile(ReportTemplate template) {
+        return templateFileCache.get(template, () -> {
+            try (InputStream inputStream = downloadTemplate(template.getFilePath())) {
+                return IOUtils.toByteArray(inputStream);
+            } catch (IOException e) {
+                log.error("读取模板文件失败: {}", template.getFilePath(), e);
+                throw new RuntimeException("读取模板文件失败: " + e.getMessage());
+            }
+        });
+    }
+
     public Page<ReportGeneration> getGenerationList(Integer pageNum, Integer pageSize, Long templateId) {
         Page<ReportGeneration> page = new Page<>(pageNum, pageSize);
         QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+        wrapper.select(SUMMARY_COLUMNS);
         if (templateId != null) {
             wrapper.eq("template_id", templateId);
         }
-        wrapper.orderByDesc("create_time");
+        wrapper.orderByDesc("create_time", "id");
         return page(page, wrapper);
     }
 
+    /**
+     * 按 (create_time, id) 游标分页查询生成记录列表，只查询摘要字段。
+     * cursor 为上一页返回的 nextCursor，为空表示第一页；countMode：exact 精确计数，approx 估算（默认），none 不计数
+     */
+    public Map<String, Object> getGenerationListByCursor(Long templateId, String cursor, Integer pageSize, String countMode) {
+        int size = Math.max(1, Math.min(pageSize != null ? pageSize : 10, listMaxPageSize));
+        QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+        wrapper.select(SUMMARY_COLUMNS);
+        if (templateId != null) {
+            wrapper.eq("template_id", templateId);
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            Object[] position = decodeCursor(cursor);
+            wrapper.apply("(create_time, id) < ({0}, {1})", position[0], position[1]);
+        }
+        wrapper.orderByDesc("create_time", "id").last("LIMIT " + (size + 1));
+
+        List<ReportGeneration> records = list(wrapper);
+        boolean hasMore = records.size() > size;
+        if (hasMore) {
+            records = new ArrayList<>(records.subList(0, size));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("records", records);
+        result.put("hasMore", hasMore);
+        result.put("nextCursor", hasMore ? encodeCursor(records.get(records.size() - 1)) : null);
+        fillTotal(result, templateId, countMode);
+        return result;
+    }
+
+    private void fillTotal(Map<String, Object> result, Long templateId, String countMode) {
+        if ("none".equals(countMode)) {
+            result.put("total", null);
+            result.put("totalApproximate", false);
+        } else if ("exact".equals(countMode)) {
+            QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+            if (templateId != null) {
+                wrapper.eq("template_id", templateId);
+            }
+            result.put("total", count(wrapper));
+            result.put("totalApproximate", false);
+        } else if (templateId == null) {
+            // 全表只取统计信息中的估算行数
+            result.put("total", baseMapper.estimateRowCount());
+            result.put("totalApproximate", true);
+        } else {
+            // 单模板最多数到 count-cap 条，超过即显示为 count-cap+
+            long total = baseMapper.countByTemplateCapped(templateId, listCountCap + 1);
+            result.put("total", Math.min(total, listCountCap));
+            result.put("totalApproximate", total > listCountCap);
+        }
+    }
+
+    private static String encodeCursor(ReportGeneration generation) {
+        String raw = generation.getCreateTime() + "|" + generation.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new Object[]{LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1))};
+        } catch (Exception e) {
+            throw new RuntimeException("分页游标无效");
+        }
+    }
+
+    /**
+     * 按 ID 查询生成记录，已归档的记录从归档段文件读取（只读，archived 为 true）
+     */
     public ReportGeneration getGenerationById(Long id) {
-        return getById(id);
+        ReportGeneration generation = getById(id);
+        return generation != null ? generation : generationArchiver.find(id);
     }
 
     public ReportGeneration generateReport(Long templateId, Map<String, Object> params, String createdBy) {
-        ReportTemplate template = templateService.getTemplateById(templateId);
+        ReportTemplate template = requireTemplate(templateId);
+        generationScheduler.admit(createdBy, template);
+        try (GenerationScheduler.Permit permit = generationScheduler.enterBulkhead(template)) {
+            ReportGeneration generation = createGeneration(template, params, createdBy, true);
+            return executeGeneration(generation, template, params, null);
+        }
+    }
+
+    /**
+     * 批量生成：同一模板、多组参数。模板查询、模板文件下载和脚本编译只做一次，
+     * 各组参数按 concurrency 并行渲染，单项失败不影响其他项，返回与 paramsList 顺序一致的结果。
+     */
+    public List<Map<String, Object>> generateBatch(Long templateId, List<Map<String, Object>> paramsList,
+                                                   Integer concurrency, String createdBy) {
+        if (paramsList == null || paramsList.isEmpty()) {
+            throw new RuntimeException("批量参数不能为空");
+        }
+        if (paramsList.size() > batchMaxItems) {
+            throw new RuntimeException("批量生成数量超过上限: " + batchMaxItems);
+        }
+
+        ReportTemplate template = requireTemplate(templateId);
+        generationScheduler.admit(createdBy, template);
+        Integer batchConcurrency = generationScheduler.capConcurrency(template, concurrency);
+        byte[] templateBytes = loadTemplateFile(template);
+        String groovyScriptContent = template.getGroovyScript();
+        if (groovyScriptContent != null && !groovyScriptContent.trim().isEmpty()) {
+            groovyScriptCache.getScriptClass(templateId, groovyScriptContent, Boolean.TRUE.equals(template.getScriptStatic()));
+        }
+        initBucket();
+
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(paramsList.size(), null));
+        generationJobExecutor.runBatch(paramsList.size(), batchConcurrency, index -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("index", index);
+            try {
+                Map<String, Object> params = paramsList.get(index) != null ? paramsList.get(index) : new HashMap<>();
+                ReportGeneration generation = createGeneration(template, params, createdBy, true);
+                executeGeneration(generation, template, params, templateBytes);
+                item.put("success", true);
+                item.put("data", generation);
+            } catch (Exception e) {
+                item.put("success", false);
+                item.put("message", e.getMessage());
+            }
+            results.set(index, item);
+        });
+        return results;
+    }
+
+    /**
+     * 异步提交生成任务：立即返回状态为 0（生成中）的记录，由任意节点的工作线程领取后完成生成。
+     * 请求参数持久化在 request_data 中，执行节点崩溃后任务会在租约过期后重新排队。
+     */
+    public ReportGeneration submitReport(Long templateId, Map<String, Object> params, String createdBy) {
+        ReportTemplate template = requireTemplate(templateId);
+        generationScheduler.admit(createdBy, template);
+        long maxQueuedPerUser = generationScheduler.getMaxQueuedPerUser();
+        if (maxQueuedPerUser > 0 && getBaseMapper().countQueuedByUserCapped(createdBy, maxQueuedPerUser) >= maxQueuedPerUser) {
+            throw generationScheduler.queueFull(true);
+        }
+        if (maxQueued > 0 && getBaseMapper().countQueuedCapped(maxQueued) >= maxQueued) {
+            throw generationScheduler.queueFull(false);
+        }
+        ReportGeneration generation = createGeneration(template, params, createdBy, false);
+        // 本节点有空闲线程时立即领取，不必等下一轮轮询
+        dispatchQueuedGenerations();
+        return generation;
+    }
+
+    /**
+     * 从数据库领取排队中的任务，按本节点空闲线程数领取（单节点并发上限为 pool-size）。
+     * 各节点用 FOR UPDATE SKIP LOCKED 并发领取，同一任务只会被一个节点领到；领取顺序见 claimQueued（按用户加权轮转、模板并发上限）。
+     */
+    @Scheduled(initialDelayString = "${report.generation.async.poll-interval:2000}",
+            fixedDelayString = "${report.generation.async.poll-interval:2000}")
+    public void dispatchQueuedGenerations() {
+        try {
+            int slots = generationJobExecutor.getIdleSlots();
+            if (slots <= 0) {
+                return;
+            }
+            String nodeId = generationJobExecutor.getNodeId();
+            Map<String, Integer> userWeights = generationScheduler.getUserWeights();
+            List<ReportGeneration> claimed = getBaseMapper().claimQueued(nodeId, leaseSeconds, maxAttempts, slots,
+                    generationScheduler.getScanLimit(), generationScheduler.getDefaultTemplateConcurrency(), userWeights);
+            LocalDateTime now = LocalDateTime.now();
+            for (ReportGeneration queued : claimed) {
+                Long id = queued.getId();
+                if (queued.getCreateTime() != null) {
+                    int weight = queued.getCreatedBy() != null ? userWeights.getOrDefault(queued.getCreatedBy(), 1) : 1;
+                    generationMetrics.recordQueueWait(weight, queued.getTemplateId(),
+                            Duration.between(queued.getCreateTime(), now));
+                }
+                if (!generationJobExecutor.trySubmit(id, () -> runQueuedGeneration(id))) {
+                    getBaseMapper().releaseClaim(id, nodeId);
+                    log.warn("本节点生成队列已满，释放任务: {}", id);
+                }
+            }
+        } catch (Exception e) {
+            log.error("领取生成任务失败", e);
+        }
+    }
+
+    /**
+     * 心跳（在 leaseRenewer 线程上执行）：为本节点执行中的任务续约，并为订阅了其他节点任务进度的页面转发状态
+     */
+    public void heartbeat() {
+        try {
+            Set<Long> running = generationJobExecutor.getPendingIds();
+            running.addAll(localGenerations.keySet());
+            if (!running.isEmpty()) {
+                List<Long> renewed = getBaseMapper().renewLeases(generationJobExecutor.getNodeId(), leaseSeconds, running);
+                running.removeAll(renewed);
+                // 未续约成功的记录已结束或已不属于本节点，仍在本节点执行的要中断，不能再写回结果
+                running.forEach(this::abortLostGeneration);
+            }
+        } catch (Exception e) {
+            log.error("生成任务续约失败", e);
+        }
+
+        try {
+            List<Long> watched = generationEventBroadcaster.getRemoteWatchedIds();
+            if (!watched.isEmpty()) {
+                QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+                wrapper.select("id", "status", "stage", "progress", "file_name", "file_size", "error_message")
+                        .in("id", watched);
+                for (ReportGeneration generation : list(wrapper)) {
+                    generationEventBroadcaster.relayRemote(generation);
+                }
+            }
+        } catch (Exception e) {
+            log.error("同步其他节点的生成进度失败", e);
+        }
+    }
+
+    /**
+     * 中断已失去租约的本地执行；记录已结束或尚未开始执行时不做处理（排队中的任务开始前会重新校验领取者）
+     */
+    private void abortLostGeneration(Long id) {
+        localGenerations.computeIfPresent(id, (key, thread) -> {
+            if (leaseLostIds.add(key)) {
+                log.warn("生成任务租约已失效（已被回收或由其他节点接管），中断本节点执行，记录ID: {}", key);
+                thread.interrupt();
+            }
+            return thread;
+        });
+    }
+
+    /**
+     * 回收中断的任务：租约过期（执行节点崩溃或失联）的任务重新排队，多次领取仍未完成的标记为失败。
+     * 启动时执行一次，之后定期执行。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${report.generation.async.recover-interval:30000}",
+            fixedDelayString = "${report.generation.async.recover-interval:30000}")
+    public void recoverPendingGenerations() {
+        try {
+            List<Long> exhausted = getBaseMapper().failExhausted(maxAttempts,
+                    "任务已执行 " + maxAttempts + " 次仍未完成（执行节点崩溃或超时），不再重试");
+            if (!exhausted.isEmpty()) {
+                log.warn("多次执行未完成的生成任务已标记为失败: {}", exhausted);
+            }
+            int requeued = getBaseMapper().requeueExpired(maxAttempts);
+            if (requeued > 0) {
+                log.info("租约过期的生成任务重新排队: {} 个", requeued);
+            }
+
+            // 升级前遗留的没有租约的执行中任务，按 stale-timeout 判断是否中断
+            UpdateWrapper<ReportGeneration> staleWrapper = new UpdateWrapper<>();
+            staleWrapper.set("stage", ReportGeneration.STAGE_QUEUED)
+                    .set("progress", 0)
+                    .eq("status", 0)
+                    .isNull("lease_expire_time")
+                    .and(w -> w.isNull("stage").or().ne("stage", ReportGeneration.STAGE_QUEUED))
+                    .lt("update_time", LocalDateTime.now().minusSeconds(staleTimeoutSeconds));
+            update(staleWrapper);
+        } catch (Exception e) {
+            log.error("恢复未完成的生成任务失败", e);
+        }
+        dispatchQueuedGenerations();
+    }
+
+    private void runQueuedGeneration(Long id) {
+        // 任务已由 claimQueued 领取，这里只需确认仍未结束
+        ReportGeneration generation = getById(id);
+        if (generation == null || !Integer.valueOf(0).equals(generation.getStatus())
+                || !generationJobExecutor.getNodeId().equals(generation.getClaimedBy())) {
+            return;
+        }
+        ReportTemplate template = lookupTemplate(generation.getTemplateId());
+        if (template == null) {
+            markFailed(generation, "模板不存在");
+            return;
+        }
+
+        try {
+            executeGeneration(generation, template, parseRequestData(generation.getRequestData()), null);
+        } catch (Exception e) {
+            log.warn("异步生成任务失败: {}", id);
+        }
+    }
+
+    private ReportTemplate requireTemplate(Long templateId) {
+        ReportTemplate template = lookupTemplate(templateId);
         if (template == null) {
             throw new RuntimeException("模板不存在");
         }
+        return template;
+    }
 
-        initBucket();
+    private ReportTemplate lookupTemplate(Long templateId) {
+        Timer.Sample sample = generationMetrics.start();
+        ReportTemplate template = templateService.getTemplateById(templateId);
+        // 模板不存在时不按请求中的 templateId 打标签，避免任意 ID 产生无限多的指标序列
+        generationMetrics.stopStage(sample, "lookup", template != null ? template.getId() : null,
+                template != null ? template.getName() : null,
+                template != null ? GenerationMetrics.OUTCOME_SUCCESS : GenerationMetrics.OUTCOME_ERROR);
+        return template;
+    }
 
-        // 创建脚本日志收集器
-        ScriptLogger scriptLogger = new ScriptLogger();
+    /**
+     * 创建生成记录；claimLocally 为 true 时（同步、批量生成）记录创建时即由本节点领取，其他节点不会再领取
+     */
+    private ReportGeneration createGeneration(ReportTemplate template, Map<String, Object> params, String createdBy,
+                                              boolean claimLocally) {
+        initBucket();
 
-        ReportGeneration generation = new ReportGeneration();
-        generation.setTemplateId(templateId);
-        generation.setTemplateName(template.getName());
         boolean useApi = true;
         if (params != null && params.containsKey("_useApi")) {
             Object flag = params.get("_useApi");
@@ -149,11 +595,70 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
             }
             params.remove("_useApi");
         }
-        generation.setRequestData(params != null ? params.toString() : "{}");
+        boolean hasApi = (template.getApiUrl() != null && !template.getApiUrl().trim().isEmpty())
+                || (template.getDataSources() != null && !template.getDataSources().trim().isEmpty());
+
+        ReportGeneration generation = new ReportGeneration();
+        generation.setTemplateId(template.getId());
+        generation.setTemplateName(template.getName());
+        generation.setRequestData(params != null ? JSON.toJSONString(params) : "{}");
+        generation.setDataSource(useApi && hasApi ? "API" : "MANUAL");
+        generation.setFileName(LocalDateTime.now().toString().replace(":", "-") + "_" + template.getFileName());
         generation.setStatus(0);
+        generation.setStage(claimLocally ? ReportGeneration.STAGE_STARTING : ReportGeneration.STAGE_QUEUED);
+        generation.setProgress(0);
         generation.setCreatedBy(createdBy);
         generation.setCreateTime(LocalDateTime.now());
         generation.setUpdateTime(LocalDateTime.now());
+        if (claimLocally) {
+            generation.setClaimedBy(generationJobExecutor.getNodeId());
+            generation.setHeartbeatTime(LocalDateTime.now());
+            generation.setLeaseExpireTime(LocalDateTime.now().plusSeconds(leaseSeconds));
+            generation.setAttemptCount(1);
+        } else {
+            generation.setAttemptCount(0);
+        }
+
+        save(generation);
+        return generation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseRequestData(String requestData) {
+        if (requestData == null || requestData.trim().isEmpty()) {
+            return new HashMap<>();
+        }
+        return JSON.parseObject(requestData, Map.class);
+    }
+
+    private ReportGeneration executeGeneration(ReportGeneration generation, ReportTemplate template,
+                                               Map<String, Object> params, byte[] templateBytes) {
+        Long templateId = template.getId();
+        boolean useApi = "API".equals(generation.getDataSource());
+
+        boolean idempotent = idempotencyEnabled;
+        if (params != null && params.containsKey("_reuse")) {
+            Object flag = params.remove("_reuse");
+            if (flag != null) {
+                idempotent = Boolean.parseBoolean(flag.toString());
+            }
+        }
+        String idempotencyKey = null;
+        CompletableFuture<ReportGeneration> idempotencyFuture = null;
+
+        // 创建脚本日志收集器
+        ScriptLogger scriptLogger = newScriptLogger();
+        scriptLogger.setListener(entry -> {
+            if (!leaseLostIds.contains(generation.getId())) {
+                generationEventBroadcaster.publishLog(generation.getId(), entry);
+            }
+        });
+        Timer.Sample generationSample = generationMetrics.start();
+        String outcome = GenerationMetrics.OUTCOME_ERROR;
+        long startNanos = System.nanoTime();
+        generationMetrics.generationStarted();
+        localGenerations.put(generation.getId(), Thread.currentThread());
+        String uploadedObject = null;
 
         try {
             scriptLogger.info("开始生成报表，模板ID: " + templateId + ", 模板名称: " + template.getName());
@@ -161,35 +666,82 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
             if (params != null) {
                 scriptLogger.debug("请求参数: " + params.toString());
             }
-            String fileName = LocalDateTime.now().toString().replace(":", "-") + "_" + template.getFileName();
-            String objectName = "generated/" + templateId + "/" + fileName;
-
-            generation.setFileName(fileName);
+            String objectName = "generated/" + templateId + "/" + attemptPrefix(generation) + generation.getFileName();
 
-            save(generation);
-
-            // 1. 从 API 获取数据（传递用户参数）
+            // 1. 从 API 获取数据（传递用户参数），模板声明的其他数据源同时并行获取
+            updateStage(generation, ReportGeneration.STAGE_FETCHING, 10);
+            Timer.Sample fetchSample = generationMetrics.start();
+            String fetchOutcome = GenerationMetrics.OUTCOME_ERROR;
             Map<String, Object> apiData = params;
-            if (useApi && template.getApiUrl() != null && !template.getApiUrl().trim().isEmpty()) {
-                generation.setDataSource("API");
-                scriptLogger.info("从 API 获取数据: " + template.getApiUrl());
-                try {
-                    apiData = fetchDataFromApi(template.getApiUrl(), params);
-                    generation.setResponseData(apiData.toString());
-                    scriptLogger.info("API 数据获取成功，数据大小: " + apiData.size() + " 条记录");
-                } catch (Exception apiEx) {
-                    log.error("API 数据获取失败，将回退到手动输入数据", apiEx);
-                    scriptLogger.error("API 数据获取失败: " + apiEx.getMessage(), apiEx);
-                    apiData = params != null ? params : java.util.Collections.emptyMap();
-                    generation.setResponseData("API 调用失败，已回退到手动数据: " + apiEx.getMessage());
+            try {
+                DataSourceFetcher.PendingFetch pendingSources = useApi
+                        ? dataSourceFetcher.fetchAsync(template, params, scriptLogger)
+                        : null;
+                if (useApi && template.getApiUrl() != null && !template.getApiUrl().trim().isEmpty()) {
+                    generation.setDataSource("API");
+                    scriptLogger.info("从 API 获取数据: " + template.getApiUrl());
+                    try {
+                        apiData = fetchDataFromApi(template, params);
+                        generation.setResponseData(describeData(apiData));
+                        scriptLogger.info("API 数据获取成功，数据大小: " + apiData.size() + " 条记录");
+                    } catch (Exception apiEx) {
+                        log.error("API 数据获取失败，将回退到手动输入数据", apiEx);
+                        scriptLogger.error("API 数据获取失败: " + apiEx.getMessage(), apiEx);
+                        generationMetrics.incrementFallback(template);
+                        apiData = params != null ? params : java.util.Collections.emptyMap();
+                        generation.setResponseData("API 调用失败，已回退到手动数据: " + apiEx.getMessage());
+                        generation.setDataSource("MANUAL");
+                    }
+                } else if (pendingSources != null && !pendingSources.isEmpty()) {
+                    generation.setDataSource("API");
+                } else {
                     generation.setDataSource("MANUAL");
+                    scriptLogger.info("使用手动输入数据");
+                }
+
+                if (pendingSources != null && !pendingSources.isEmpty()) {
+                    Map<String, Object> mergedData = new HashMap<>();
+                    if (apiData != null) {
+                        mergedData.putAll(apiData);
+                    }
+                    mergedData.putAll(pendingSources.await());
+                    apiData = mergedData;
+                }
+                fetchOutcome = GenerationMetrics.OUTCOME_SUCCESS;
+            } finally {
+                generationMetrics.stopStage(fetchSample, "fetch", template, fetchOutcome);
+            }
+
+            // 1.5 幂等复用：相同模板版本、参数和数据在新鲜期内直接复用已有报表，或等待正在生成的相同报表
+            if (idempotent) {
+                idempotencyKey = JsonDigest.sha256(templateId, template.getFilePath(), String.valueOf(template.getUpdateTime()),
+                        template.getGroovyScript(), params, apiData);
+                generation.setIdempotencyKey(idempotencyKey);
+
+                ReportGeneration reusable = findReusableGeneration(idempotencyKey, generation.getId());
+                if (reusable == null) {
+                    CompletableFuture<ReportGeneration> own = new CompletableFuture<>();
+                    CompletableFuture<ReportGeneration> running = inFlightByIdempotencyKey.putIfAbsent(idempotencyKey, own);
+                    if (running == null) {
+                        idempotencyFuture = own;
+                    } else {
+                        scriptLogger.info("相同报表正在生成，等待其完成后复用");
+                        try {
+                            reusable = running.get(idempotencyWaitSeconds, TimeUnit.SECONDS);
+                        } catch (Exception waitEx) {
+                            scriptLogger.warn("等待相同报表生成未成功，继续独立生成: " + waitEx.getMessage());
+                        }
+                    }
+                }
+                if (reusable != null && Integer.valueOf(1).equals(reusable.getStatus())) {
+                    ReportGeneration reused = completeAsReused(generation, reusable, scriptLogger);
+                    outcome = GenerationMetrics.OUTCOME_REUSED;
+                    return reused;
                 }
-            } else {
-                generation.setDataSource("MANUAL");
-                scriptLogger.info("使用手动输入数据");
             }
 
             // 2. 使用 Groovy 脚本处理数据
+            updateStage(generation, ReportGeneration.STAGE_SCRIPTING, 30);
             Map<String, Object> renderData = apiData;
             String groovyScriptContent = template.getGroovyScript();
 
@@ -197,7 +749,9 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
 
             if (groovyScriptContent != null && !groovyScriptContent.trim().isEmpty()) {
                 scriptLogger.info("开始执行 Groovy 脚本");
-                renderData = executeGroovyScript(groovyScriptContent, apiData, params, builder, scriptLogger);
+                Map<String, Object> scriptData = apiData;
+                renderData = generationMetrics.timeStage("script", template,
+                        () -> executeGroovyScript(template, groovyScriptContent, scriptData, params, builder, scriptLogger));
                 scriptLogger.info("Groovy 脚本执行完成");
             } else {
                 scriptLogger.info("未配置 Groovy 脚本，使用原始数据");
@@ -205,84 +759,353 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
 
             // 2.5 自动探测 renderData 中的 List 并绑定 LoopRowTableRenderPolicy
             // 只有绑定了 Policy，{{#list}} 标签才能被正确识别为表格循环
+            // 行数超过阈值的列表，以及脚本返回的 Iterator/Stream，改用 StreamingRowTableRenderPolicy
             if (renderData != null) {
                 renderData.forEach((key, value) -> {
-                    if (value instanceof java.util.List) {
+                    if (value instanceof java.util.List && ((java.util.List<?>) value).size() < streamingTableThreshold) {
                         scriptLogger.info("检测到列表数据 [" + key + "]，自动绑定 LoopRowTableRenderPolicy");
 
                         // 如果是复杂的监测报表（需要跨行合并），可以在 Groovy 脚本中预设合并列
                         // 这里我们先绑定最基础的循环策略
                         builder.bind(key, new LoopRowTableRenderPolicy());
+                    } else if (value instanceof java.util.List || value instanceof java.util.Iterator
+                            || value instanceof java.util.stream.Stream) {
+                        // 渲染结果与 LoopRowTableRenderPolicy 一致（保留样式和换行），但模板行中的图片等非文本标签会退回普通循环
+                        log.warn("表格数据 [{}] 超过 {} 行或为 Iterator/Stream，改用 StreamingRowTableRenderPolicy，模板ID: {}",
+                                key, streamingTableThreshold, template.getId());
+                        scriptLogger.warn("检测到大数据量表格数据 [" + key + "]，自动绑定 StreamingRowTableRenderPolicy");
+                        builder.bind(key, new StreamingRowTableRenderPolicy());
                     }
                 });
             }
 
 
             // 3. 渲染 Word
+            updateStage(generation, ReportGeneration.STAGE_RENDERING, 50);
             scriptLogger.info("开始渲染 Word 文档");
-            InputStream templateStream = downloadTemplate(template.getFilePath());
-            XWPFTemplate wordTemplate = XWPFTemplate.compile(templateStream, builder.build());
-            wordTemplate.render(renderData);
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            wordTemplate.write(outputStream);
-            wordTemplate.close();
-
-            byte[] fileBytes = outputStream.toByteArray();
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(fileBytes);
-            scriptLogger.info("Word 文档渲染完成，文件大小: " + fileBytes.length + " 字节");
-
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectName)
-                            .stream(inputStream, fileBytes.length, -1)
-                            .contentType("application/vnd.openxmlformats-officedocument.wordprocessingml.document")
-                            .build()
-            );
+            InputStream templateStream = new ByteArrayInputStream(templateBytes != null ? templateBytes : loadTemplateFile(template));
+            XWPFTemplate wordTemplate = generationMetrics.timeStage("compile", template,
+                    () -> XWPFTemplate.compile(templateStream, builder.build()));
+            long fileSize;
+            try {
+                Map<String, Object> finalRenderData = renderData;
+                generationMetrics.timeStage("render", template, () -> wordTemplate.render(finalRenderData));
+                fileSize = writeAndUpload(wordTemplate, template, objectName, generation, scriptLogger);
+                uploadedObject = objectName;
+            } finally {
+                wordTemplate.close();
+            }
 
             generation.setFilePath(objectName);
-            generation.setFileSize((long) fileBytes.length);
+            generation.setFileSize(fileSize);
             generation.setStatus(1);
-            generation.setExecutionLog(scriptLogger.getFullLog());
-
+            generation.setStage(ReportGeneration.STAGE_DONE);
+            generation.setProgress(100);
             scriptLogger.info("报表生成成功！");
-            updateById(generation);
+            applyExecutionLog(generation, scriptLogger);
+            generation.setUpdateTime(LocalDateTime.now());
+            saveOwnedResult(generation);
 
+            if (idempotencyFuture != null) {
+                idempotencyFuture.complete(generation);
+            }
+            outcome = GenerationMetrics.OUTCOME_SUCCESS;
             return generation;
 
         } catch (Exception e) {
+            if (leaseLostIds.contains(generation.getId())) {
+                // 清除心跳设置的中断标记，下面删除对象时 MinIO 客户端不会因中断直接失败
+                Thread.interrupted();
+                log.warn("生成任务租约已失效，放弃本次执行结果，记录ID: {}, 原因: {}", generation.getId(), e.getMessage());
+                removeObjectQuietly(uploadedObject);
+                removeObjectQuietly(generation.getExecutionLogPath());
+                throw new RuntimeException("生成报告失败: 任务租约已失效，记录已被回收或由其他节点接管");
+            }
             log.error("生成报告失败", e);
             scriptLogger.error("生成报告失败: " + e.getMessage(), e);
             generation.setStatus(2);
-            generation.setExecutionLog(scriptLogger.getFullLog());
-            updateById(generation);
+            generation.setStage(ReportGeneration.STAGE_FAILED);
+            generation.setErrorMessage(e.getMessage());
+            applyExecutionLog(generation, scriptLogger);
+            generation.setUpdateTime(LocalDateTime.now());
+            if (!updateOwned(generation, generation, new UpdateWrapper<>())) {
+                leaseLostIds.add(generation.getId());
+                log.warn("生成任务租约已失效，不再写入失败状态，记录ID: {}", generation.getId());
+                removeObjectQuietly(generation.getExecutionLogPath());
+            }
             throw new RuntimeException("生成报告失败: " + e.getMessage());
+        } finally {
+            if (idempotencyFuture != null) {
+                idempotencyFuture.complete(null);
+                inFlightByIdempotencyKey.remove(idempotencyKey, idempotencyFuture);
+            }
+            // 移除后心跳不会再中断这个线程；已失去租约时清除可能残留的中断标记，避免影响复用的工作线程
+            localGenerations.remove(generation.getId());
+            boolean leaseLost = leaseLostIds.remove(generation.getId());
+            if (leaseLost) {
+                Thread.interrupted();
+            }
+            generationMetrics.generationFinished();
+            generationMetrics.stopGeneration(generationSample, template, outcome);
+            recordStatistics(template, generation, outcome, startNanos);
+            if (leaseLost) {
+                generationEventBroadcaster.release(generation.getId());
+            } else {
+                generationEventBroadcaster.finish(generation);
+            }
         }
     }
 
-    private Map<String, Object> fetchDataFromApi(String apiUrl, Map<String, Object> params) {
+    private void recordStatistics(ReportTemplate template, ReportGeneration generation, String outcome, long startNanos) {
         try {
-            HttpUrl.Builder urlBuilder = HttpUrl.parse(apiUrl).newBuilder();
-            if (params != null) {
-                for (Map.Entry<String, Object> entry : params.entrySet()) {
-                    urlBuilder.addQueryParameter(entry.getKey(), entry.getValue() != null ? entry.getValue().toString() : "");
+            boolean success = !GenerationMetrics.OUTCOME_ERROR.equals(outcome);
+            long fileSize = GenerationMetrics.OUTCOME_SUCCESS.equals(outcome) && generation.getFileSize() != null
+                    ? generation.getFileSize() : 0L;
+            long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            generationStatistics.record(template.getId(), template.getName(), success, durationMs, fileSize);
+        } catch (Exception e) {
+            log.warn("记录生成统计失败: {}", e.getMessage());
+        }
+    }
+
+    private ReportGeneration findReusableGeneration(String idempotencyKey, Long currentId) {
+        QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+        wrapper.eq("idempotency_key", idempotencyKey)
+                .eq("status", 1)
+                .ne("id", currentId)
+                .ge("create_time", LocalDateTime.now().minusSeconds(idempotencyWindowSeconds))
+                .orderByDesc("id")
+                .last("LIMIT 1");
+        return getOne(wrapper, false);
+    }
+
+    /**
+     * 当前记录直接指向已有报表文件，不再渲染和上传
+     */
+    private ReportGeneration completeAsReused(ReportGeneration generation, ReportGeneration reusable, ScriptLogger scriptLogger) {
+        Long sourceId = reusable.getReusedFrom() != null ? reusable.getReusedFrom() : reusable.getId();
+        scriptLogger.info("复用已有报表，记录ID: " + sourceId);
+
+        generation.setReusedFrom(sourceId);
+        generation.setFilePath(reusable.getFilePath());
+        generation.setFileSize(reusable.getFileSize());
+        generation.setStatus(1);
+        generation.setStage(ReportGeneration.STAGE_DONE);
+        generation.setProgress(100);
+        applyExecutionLog(generation, scriptLogger);
+        generation.setUpdateTime(LocalDateTime.now());
+        saveOwnedResult(generation);
+        return generation;
+    }
+
+    /**
+     * 写入最终结果；记录已被回收或由其他节点接管时标记为失去租约并抛出异常，由调用方的异常处理清理本次上传的对象
+     */
+    private void saveOwnedResult(ReportGeneration generation) {
+        if (!updateOwned(generation, generation, new UpdateWrapper<>())) {
+            leaseLostIds.add(generation.getId());
+            throw new RuntimeException("任务租约已失效");
+        }
+    }
+
+    /**
+     * 带租约校验的更新：只有记录仍由本节点的这次领取持有（领取者、领取次数未变且未结束）时才写入。
+     * values 非空时写入其中的非空字段，否则只写入 wrapper 中 set 的字段；返回 false 表示已失去租约。
+     */
+    private boolean updateOwned(ReportGeneration generation, ReportGeneration values, UpdateWrapper<ReportGeneration> wrapper) {
+        wrapper.eq("id", generation.getId())
+                .eq("claimed_by", generationJobExecutor.getNodeId())
+                .eq("status", 0);
+        if (generation.getAttemptCount() != null) {
+            wrapper.eq("attempt_count", generation.getAttemptCount());
+        }
+        return update(values, wrapper);
+    }
+
+    /**
+     * 重新领取执行（attempt_count > 1）时对象名带上领取次数，失去租约的旧执行清理自己上传的对象时不会删掉接管者的文件
+     */
+    private static String attemptPrefix(ReportGeneration generation) {
+        Integer attempt = generation.getAttemptCount();
+        return attempt != null && attempt > 1 ? attempt + "_" : "";
+    }
+
+    private void removeObjectQuietly(String objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .build()
+            );
+        } catch (Exception e) {
+            log.warn("删除对象失败: {}, 原因: {}", objectName, e.getMessage());
+        }
+    }
+
+    private ScriptLogger newScriptLogger() {
+        return new ScriptLogger(scriptLogCapacity, scriptLogDebugLimit, scriptLogInfoLimit, scriptLogWarnLimit);
+    }
+
+    /**
+     * 执行日志不超过 inline-max-chars 时直接存入 execution_log；
+     * 否则完整日志上传到 MinIO（execution_log_path），execution_log 只保留首尾摘要
+     */
+    private void applyExecutionLog(ReportGeneration generation, ScriptLogger scriptLogger) {
+        String fullLog = scriptLogger.getFullLog();
+        if (fullLog.length() <= logInlineMaxChars) {
+            generation.setExecutionLog(fullLog);
+            return;
+        }
+
+        String objectName = "logs/" + attemptPrefix(generation) + generation.getId() + ".log";
+        String notice;
+        try {
+            byte[] bytes = fullLog.getBytes(StandardCharsets.UTF_8);
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                            .contentType("text/plain; charset=utf-8")
+                            .build()
+            );
+            generation.setExecutionLogPath(objectName);
+            notice = "\n... 日志共 " + fullLog.length() + " 字符，此处仅显示首尾部分，完整日志已保存 ...\n";
+        } catch (Exception e) {
+            log.warn("保存完整执行日志失败，记录ID: {}, 原因: {}", generation.getId(), e.getMessage());
+            notice = "\n... 日志共 " + fullLog.length() + " 字符，已截断 ...\n";
+        }
+        int half = logInlineMaxChars / 2;
+        generation.setExecutionLog(fullLog.substring(0, half) + notice + fullLog.substring(fullLog.length() - half));
+    }
+
+    /**
+     * 获取完整执行日志，日志已转存到 MinIO 时从对象存储读取
+     */
+    public String getExecutionLog(Long id) {
+        ReportGeneration generation = getGenerationById(id);
+        if (generation == null) {
+            throw new RuntimeException("生成记录不存在");
+        }
+        if (generation.getExecutionLogPath() == null) {
+            return generation.getExecutionLog();
+        }
+
+        try (InputStream inputStream = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(generation.getExecutionLogPath())
+                        .build())) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.error("读取执行日志失败", e);
+            throw new RuntimeException("读取执行日志失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 将渲染结果写入溢出缓冲区（小文件留在内存，超过阈值写入临时文件），写入过程中统计文件大小，
+     * 再以已知长度流式上传到 MinIO，避免整份文档在堆上复制多份。
+     */
+    private long writeAndUpload(XWPFTemplate wordTemplate, ReportTemplate template, String objectName,
+                                ReportGeneration generation, ScriptLogger scriptLogger) throws Exception {
+        DeferredFileOutputStream outputStream = new DeferredFileOutputStream(
+                renderMemoryThreshold, "report-", ".docx", resolveRenderTempDir());
+        try {
+            generationMetrics.timeStage("write", template, () -> {
+                wordTemplate.write(outputStream);
+                outputStream.close();
+                return null;
+            });
+
+            long fileSize = outputStream.getByteCount();
+            scriptLogger.info("Word 文档渲染完成，文件大小: " + fileSize + " 字节"
+                    + (outputStream.isInMemory() ? "" : "（已写入临时文件）"));
+
+            updateStage(generation, ReportGeneration.STAGE_UPLOADING, 80);
+            generationMetrics.timeStage("upload", template, () -> {
+                try (InputStream inputStream = outputStream.toInputStream()) {
+                    return minioClient.putObject(
+                            PutObjectArgs.builder()
+                                    .bucket(bucketName)
+                                    .object(objectName)
+                                    .stream(inputStream, fileSize, -1)
+                                    .contentType("application/vnd.openxmlformats-officedocument.wordprocessingml.document")
+                                    .build()
+                    );
                 }
+            });
+            return fileSize;
+        } finally {
+            outputStream.close();
+            if (!outputStream.isInMemory()) {
+                FileUtils.deleteQuietly(outputStream.getFile());
             }
+        }
+    }
 
-            Request request = new Request.Builder()
-                    .url(urlBuilder.build())
-                    .get()
-                    .build();
+    private File resolveRenderTempDir() {
+        return renderTempDir == null || renderTempDir.trim().isEmpty() ? null : new File(renderTempDir);
+    }
 
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    throw new RuntimeException("API 调用失败: " + response.code());
-                }
+    /**
+     * 更新执行阶段；记录已失去租约时抛出异常，尽早结束本节点的执行
+     */
+    private void updateStage(ReportGeneration generation, String stage, int progress) {
+        generation.setStage(stage);
+        generation.setProgress(progress);
+
+        UpdateWrapper<ReportGeneration> wrapper = new UpdateWrapper<>();
+        wrapper.set("stage", stage)
+                .set("progress", progress)
+                .set("update_time", LocalDateTime.now());
+        if (!updateOwned(generation, null, wrapper)) {
+            leaseLostIds.add(generation.getId());
+            throw new RuntimeException("任务租约已失效");
+        }
+        generationEventBroadcaster.publishStage(generation.getId(), stage, progress);
+    }
+
+    private void markFailed(ReportGeneration generation, String message) {
+        generation.setStatus(2);
+        generation.setStage(ReportGeneration.STAGE_FAILED);
+        generation.setErrorMessage(message);
+        generation.setUpdateTime(LocalDateTime.now());
+        if (updateOwned(generation, generation, new UpdateWrapper<>())) {
+            generationEventBroadcaster.finish(generation);
+        } else {
+            log.warn("生成任务租约已失效，不再写入失败状态，记录ID: {}", generation.getId());
+        }
+    }
 
-                String responseBody = response.body().string();
-                return com.alibaba.fastjson.JSON.parseObject(responseBody, Map.class);
+    /**
+     * 生成记录中保存的接口数据摘要，大列表只记录条数，避免把整份数据转成字符串
+     */
+    private String describeData(Map<String, Object> data) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        data.forEach((key, value) -> {
+            if (value instanceof List && ((List<?>) value).size() > responseDataMaxRows) {
+                summary.put(key, "[共 " + ((List<?>) value).size() + " 条记录]");
+            } else {
+                summary.put(key, value);
             }
+        });
+        return summary.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> fetchDataFromApi(ReportTemplate template, Map<String, Object> params) {
+        String apiUrl = template.getApiUrl();
+        try {
+            Object data = dataSourceCache.fetch(template.getId(), apiUrl, params, template.getApiCacheTtl());
+            if (!(data instanceof Map)) {
+                throw new RuntimeException("接口返回的不是 JSON 对象");
+            }
+            return (Map<String, Object>) data;
         } catch (Exception e) {
             log.error("调用 API 失败: {}", apiUrl, e);
             throw new RuntimeException("调用 API 失败: " + e.getMessage());
@@ -290,22 +1113,17 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
     }
 
     @SuppressWarnings("unchecked")
-    private Map<String, Object> executeGroovyScript(String scriptContent, Map<String, Object> data, Map<String, Object> params, ConfigureBuilder builder, ScriptLogger scriptLogger) {
+    private Map<String, Object> executeGroovyScript(ReportTemplate template, String scriptContent, Map<String, Object> data, Map<String, Object> params, ConfigureBuilder builder, ScriptLogger scriptLogger) {
         try {
-            ScriptEngine engine = scriptEngineManager.getEngineByName("groovy");
-            if (engine == null) {
-                log.error("Groovy 脚本引擎不可用");
-                scriptLogger.error("Groovy 脚本引擎不可用");
-                return data;
-            }
+            // 注入变量（每次执行独立的 Binding，编译结果按模板缓存复用）
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("data", data);
+            variables.put("params", params);
+            variables.put("config", builder);
+            variables.put("log", scriptLogger);
 
-            // 注入变量
-            engine.put("data", data);
-            engine.put("params", params);
-            engine.put("config", builder);
-            engine.put("log", scriptLogger);
-
-            Object result = engine.eval(scriptContent);
+            Object result = groovyScriptCache.run(template.getId(), scriptContent, variables,
+                    template.getScriptTimeout(), Boolean.TRUE.equals(template.getScriptStatic()));
 
             if (result instanceof Map) {
                 scriptLogger.debug("Groovy 脚本返回 Map 类型数据");
@@ -316,6 +1134,11 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
                 resultMap.put("scriptResult", result);
                 return resultMap;
             }
+        } catch (GroovyScriptCache.ScriptTimeoutException e) {
+            // 超时的脚本结果不完整，直接让本次生成失败
+            log.error("执行 Groovy 脚本超时，模板ID: {}", template.getId());
+            scriptLogger.error(e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("执行 Groovy 脚本失败", e);
             scriptLogger.error("执行 Groovy 脚本失败: " + e.getMessage(), e);
@@ -353,7 +1176,29 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
     }
 
     public InputStream downloadReport(Long id) {
-        ReportGeneration generation = getById(id);
+        ReportGeneration generation = getGenerationById(id);
+        if (generation == null) {
+            throw new RuntimeException("生成记录不存在");
+        }
+
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(generation.getFilePath())
+                            .build()
+            );
+        } catch (Exception e) {
+            log.error("下载报告失败", e);
+            throw new RuntimeException("下载报告失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按区间下载报告文件，length 为 null 表示读到文件末尾
+     */
+    public InputStream downloadReport(Long id, long offset, Long length) {
+        ReportGeneration generation = getGenerationById(id);
         if (generation == null) {
             throw new RuntimeException("生成记录不存在");
         }
@@ -363,6 +1208,8 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
                     GetObjectArgs.builder()
                             .bucket(bucketName)
                             .object(generation.getFilePath())
+                            .offset(offset)
+                            .length(length)
                             .build()
             );
         } catch (Exception e) {
@@ -371,8 +1218,22 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
         }
     }
 
+    public long getReportSize(ReportGeneration generation) {
+        try {
+            return minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(generation.getFilePath())
+                            .build()
+            ).size();
+        } catch (Exception e) {
+            log.error("获取报告文件信息失败", e);
+            throw new RuntimeException("获取报告文件信息失败: " + e.getMessage());
+        }
+    }
+
     public String getDownloadUrl(Long id) {
-        ReportGeneration generation = getById(id);
+        ReportGeneration generation = getGenerationById(id);
         if (generation == null) {
             throw new RuntimeException("生成记录不存在");
         }
@@ -394,7 +1255,26 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
 
     public void deleteGeneration(Long id) {
         ReportGeneration generation = getById(id);
+        if (generation == null && generationArchiver.find(id) != null) {
+            throw new RuntimeException("记录已归档，不能删除");
+        }
         if (generation != null) {
+            if (generation.getExecutionLogPath() != null) {
+                try {
+                    minioClient.removeObject(
+                            RemoveObjectArgs.builder()
+                                    .bucket(bucketName)
+                                    .object(generation.getExecutionLogPath())
+                                    .build()
+                    );
+                } catch (Exception e) {
+                    log.error("删除执行日志失败", e);
+                }
+            }
+            if (generation.getFilePath() == null || isFileShared(generation)) {
+                removeById(id);
+                return;
+            }
             try {
                 minioClient.removeObject(
                         RemoveObjectArgs.builder()
@@ -402,10 +1282,27 @@ public class ReportGenerationService extends ServiceImpl<ReportGenerationMapper,
                                 .object(generation.getFilePath())
                                 .build()
                 );
+                // 文件已删除，清掉已逻辑删除的共享记录上的路径，保留清理任务不再重复删除和扣减存储量
+                getBaseMapper().clearFilePath(generation.getReusedFrom() != null ? generation.getReusedFrom() : id);
+                if (generation.getFileSize() != null) {
+                    generationStatistics.recordDeleted(generation.getTemplateId(), generation.getFileSize());
+                }
             } catch (Exception e) {
                 log.error("删除文件失败", e);
             }
             removeById(id);
         }
     }
+
+    /**
+     * 复用生成的记录与原记录指向同一个文件，仍有其他记录（含已归档的记录）引用时不删除文件
+     */
+    private boolean isFileShared(ReportGeneration generation) {
+        Long sourceId = generation.getReusedFrom() != null ? generation.getReusedFrom() : generation.getId();
+        QueryWrapper<ReportGeneration> wrapper = new QueryWrapper<>();
+        wrapper.and(w -> w.eq("id", sourceId).or().eq("reused_from", sourceId))
+                .ne("id", generation.getId());
+        return count(wrapper) > 0
+                || !archiveFileMapper.selectReferenced(Collections.singletonList(sourceId)).isEmpty();
+    }
 }
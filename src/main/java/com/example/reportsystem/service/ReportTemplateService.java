@@ -3,6 +3,11 @@ package com.example.reportsystem.service;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.example.reportsystem.cache.GroovyScriptCache;
+import com.example.reportsystem.cache.TemplateChangeListener;
+import com.example.reportsystem.cache.TemplateMetadataCache;
+import com.example.reportsystem.datasource.DataSourceDefinition;
+import com.example.reportsystem.dto.TemplateOptions;
 import com.example.reportsystem.entity.ReportTemplate;
 import com.example.reportsystem.mapper.ReportTemplateMapper;
 import io.minio.*;
@@ -16,6 +21,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -25,6 +31,15 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
     @Autowired
     private MinioClient minioClient;
 
+    @Autowired
+    private GroovyScriptCache groovyScriptCache;
+
+    @Autowired
+    private TemplateMetadataCache templateMetadataCache;
+
+    @Autowired
+    private TemplateChangeListener templateChangeListener;
+
     @Value("${minio.templateBucketName:report-templates}")
     private String templateBucketName;
 
@@ -55,15 +70,30 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
         return page(page, wrapper);
     }
 
+    /**
+     * 按ID读取模板（经过本地缓存，返回副本）；需要修改并保存时请用 getById 读取最新数据
+     */
     public ReportTemplate getTemplateById(Long id) {
-        return getById(id);
+        return templateMetadataCache.get(id, () -> getById(id));
+    }
+
+    /**
+     * 全部模板（经过本地缓存），供生成页面的模板下拉框使用
+     */
+    public List<ReportTemplate> listTemplates() {
+        return templateMetadataCache.getAll(this::list);
     }
 
     public ReportTemplate uploadTemplate(MultipartFile file, String name, String description,
-                                        String apiUrl, String groovyScriptContent, String createdBy) {
+                                        String apiUrl, String groovyScriptContent, String createdBy,
+                                        TemplateOptions options) {
         initBucket();
 
+        String uploadedObject = null;
         try {
+            // 先校验脚本和数据源配置，校验失败时不会在模板桶中留下无主的文件
+            validateOptions(groovyScriptContent, options);
+
             String originalFilename = file.getOriginalFilename();
             String extension = FilenameUtils.getExtension(originalFilename);
             String fileName = System.currentTimeMillis() + "_" + originalFilename;
@@ -77,6 +107,7 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
                             .contentType(file.getContentType())
                             .build()
             );
+            uploadedObject = objectName;
 
             ReportTemplate template = new ReportTemplate();
             template.setName(name);
@@ -87,22 +118,37 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
             template.setFilePath(objectName);
             template.setApiUrl(apiUrl);
             template.setGroovyScript(groovyScriptContent);
+            applyOptions(template, options);
             template.setStatus(1);
             template.setCreatedBy(createdBy);
             template.setCreateTime(LocalDateTime.now());
             template.setUpdateTime(LocalDateTime.now());
 
             save(template);
+            templateChangeListener.publish(template.getId());
             return template;
 
         } catch (Exception e) {
             log.error("上传模板失败", e);
+            if (uploadedObject != null) {
+                // 模板记录未保存成功，删除已上传的文件
+                try {
+                    minioClient.removeObject(
+                            RemoveObjectArgs.builder()
+                                    .bucket(templateBucketName)
+                                    .object(uploadedObject)
+                                    .build()
+                    );
+                } catch (Exception removeEx) {
+                    log.warn("删除未保存模板的文件失败: {}", uploadedObject, removeEx);
+                }
+            }
             throw new RuntimeException("上传模板失败: " + e.getMessage());
         }
     }
 
     public ReportTemplate updateTemplate(Long id, String name, String description,
-                                        String apiUrl, String groovyScriptContent) {
+                                        String apiUrl, String groovyScriptContent, TemplateOptions options) {
         ReportTemplate template = getById(id);
         if (template == null) {
             throw new RuntimeException("模板不存在");
@@ -113,9 +159,12 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
             template.setDescription(description);
             template.setApiUrl(apiUrl);
             template.setGroovyScript(groovyScriptContent);
+            validateOptions(groovyScriptContent, options);
+            applyOptions(template, options);
 
             template.setUpdateTime(LocalDateTime.now());
             updateById(template);
+            templateChangeListener.publish(id);
             return template;
         } catch (Exception e) {
             log.error("更新模板失败", e);
@@ -123,6 +172,36 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
         }
     }
 
+    /**
+     * 复制模板的可选配置项（表单中除名称、描述、接口地址、脚本外的其他字段），调用前需先 validateOptions
+     */
+    private void applyOptions(ReportTemplate template, TemplateOptions options) {
+        if (options == null) {
+            return;
+        }
+        template.setApiCacheTtl(options.getApiCacheTtl());
+        template.setScriptTimeout(options.getScriptTimeout());
+        template.setMaxConcurrency(options.getMaxConcurrency());
+        template.setRetentionDays(options.getRetentionDays());
+        template.setRetentionMaxCount(options.getRetentionMaxCount());
+        template.setScriptStatic(Boolean.TRUE.equals(options.getScriptStatic()));
+        template.setDataSources(options.getDataSources() != null && !options.getDataSources().trim().isEmpty()
+                ? options.getDataSources() : null);
+    }
+
+    /**
+     * 保存前校验：静态编译模式在保存时完成编译和类型检查，数据源配置检查格式，错误不留到生成时才暴露
+     */
+    private void validateOptions(String script, TemplateOptions options) {
+        if (options == null) {
+            return;
+        }
+        if (Boolean.TRUE.equals(options.getScriptStatic()) && script != null && !script.trim().isEmpty()) {
+            groovyScriptCache.validate(script, true);
+        }
+        DataSourceDefinition.parse(options.getDataSources());
+    }
+
     public ReportTemplate updateTemplateFile(Long id, MultipartFile file) {
         initBucket();
 
@@ -153,6 +232,7 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
             template.setUpdateTime(LocalDateTime.now());
 
             updateById(template);
+            templateChangeListener.publish(id);
             return template;
 
         } catch (Exception e) {
@@ -175,11 +255,34 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
                 log.error("删除文件失败", e);
             }
             removeById(id);
+            templateChangeListener.publish(id);
         }
     }
 
     public InputStream downloadTemplate(Long id) {
-        ReportTemplate template = getById(id);
+        ReportTemplate template = getTemplateById(id);
+        if (template == null) {
+            throw new RuntimeException("模板不存在");
+        }
+
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(templateBucketName)
+                            .object(template.getFilePath())
+                            .build()
+            );
+        } catch (Exception e) {
+            log.error("下载模板失败", e);
+            throw new RuntimeException("下载模板失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按区间下载模板文件，length 为 null 表示读到文件末尾
+     */
+    public InputStream downloadTemplate(Long id, long offset, Long length) {
+        ReportTemplate template = getTemplateById(id);
         if (template == null) {
             throw new RuntimeException("模板不存在");
         }
@@ -189,6 +292,8 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
                     GetObjectArgs.builder()
                             .bucket(templateBucketName)
                             .object(template.getFilePath())
+                            .offset(offset)
+                            .length(length)
                             .build()
             );
         } catch (Exception e) {
@@ -197,8 +302,22 @@ public class ReportTemplateService extends ServiceImpl<ReportTemplateMapper, Rep
         }
     }
 
+    public long getTemplateFileSize(ReportTemplate template) {
+        try {
+            return minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(templateBucketName)
+                            .object(template.getFilePath())
+                            .build()
+            ).size();
+        } catch (Exception e) {
+            log.error("获取模板文件信息失败", e);
+            throw new RuntimeException("获取模板文件信息失败: " + e.getMessage());
+        }
+    }
+
     public String getTemplateDownloadUrl(Long id) {
-        ReportTemplate template = getById(id);
+        ReportTemplate template = getTemplateById(id);
         if (template == null) {
             throw new RuntimeException("模板不存在");
         }
@@ -0,0 +1,39 @@
+package com.example.reportsystem.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * JSON 规范化摘要
+ * 对象按 Map 键排序后序列化并计算 SHA-256，序列化结果直接写入摘要流，不生成中间字符串。
+ */
+public final class JsonDigest {
+
+    private JsonDigest() {
+    }
+
+    public static String sha256(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DigestOutputStream outputStream = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest)) {
+                for (Object part : parts) {
+                    JSON.writeJSONString(outputStream, part, SerializerFeature.MapSortField);
+                    outputStream.write('\n');
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("计算摘要失败", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.reportsystem.util;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 文件下载工具
+ * 从对象存储流式写出到响应，使用固定大小缓冲区，支持单区间 Range 请求（206 Partial Content），
+ * 便于客户端断点续传；多区间请求按完整文件返回。
+ */
+public final class RangeDownloadUtils {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private RangeDownloadUtils() {
+    }
+
+    /**
+     * 按偏移量和长度打开对象流，length 为 null 表示读到文件末尾
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+        InputStream open(long offset, Long length) throws Exception;
+    }
+
+    public static void write(HttpServletRequest request, HttpServletResponse response,
+                             String fileName, long totalLength, RangeOpener opener) throws Exception {
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + URLEncoder.encode(fileName, "UTF-8") + "\"");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = totalLength - 1;
+        boolean partial = false;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && totalLength > 0) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = Collections.emptyList();
+            }
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(totalLength);
+                    end = ranges.get(0).getRangeEnd(totalLength);
+                    partial = true;
+                } catch (IllegalArgumentException e) {
+                    rangeNotSatisfiable(response, totalLength);
+                    return;
+                }
+                // 起始位置超出文件长度时 HttpRange 不抛异常（如 100 字节文件的 bytes=500-），需单独判断
+                if (start >= totalLength || end < start) {
+                    rangeNotSatisfiable(response, totalLength);
+                    return;
+                }
+            }
+        }
+
+        long length = Math.max(0, end - start + 1);
+        if (partial) {
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + totalLength);
+        }
+        response.setContentLengthLong(length);
+        if (length == 0) {
+            return;
+        }
+
+        try (InputStream inputStream = opener.open(start, partial ? length : null)) {
+            IOUtils.copyLarge(inputStream, response.getOutputStream(), new byte[BUFFER_SIZE]);
+        }
+    }
+
+    private static void rangeNotSatisfiable(HttpServletResponse response, long totalLength) {
+        response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + totalLength);
+    }
+}
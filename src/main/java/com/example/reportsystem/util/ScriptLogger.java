@@ -1,34 +1,71 @@
 package com.example.reportsystem.util;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Groovy 脚本执行日志收集器
  * 用于在页面显示 Groovy 脚本的执行日志和错误信息
+ * <p>
+ * 日志保存在有界环形缓冲区中，超出容量时丢弃最早的日志；DEBUG/INFO/WARN 各有条数上限，超出部分直接丢弃，
+ * 丢弃的条数会在完整日志末尾汇总。时间戳只记录毫秒数，输出时才格式化。
  */
 public class ScriptLogger {
 
-    private final List<LogEntry> logs = new ArrayList<>();
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    public static final int DEFAULT_CAPACITY = 5000;
+
+    private static final DateTimeFormatter FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final String[] LEVELS = {"DEBUG", "INFO", "WARN", "ERROR"};
+    private static final int DEBUG = 0;
+    private static final int INFO = 1;
+    private static final int WARN = 2;
+    private static final int ERROR = 3;
+
+    private final int capacity;
+    private final int[] limits;
+    private final ArrayDeque<LogEntry> logs = new ArrayDeque<>();
+    private final int[] accepted = new int[LEVELS.length];
+    private final int[] dropped = new int[LEVELS.length];
+    private int errorCount;
+    private Listener listener;
+
+    /**
+     * 日志监听器，每条被保留的日志写入后回调；回调在打日志的线程中执行，不能阻塞
+     */
+    public interface Listener {
+        void onLog(LogEntry entry);
+    }
 
     public static class LogEntry {
-        private final String timestamp;
+        private final long time;
         private final String level;
         private final String message;
         private final String exception;
 
         public LogEntry(String level, String message, String exception) {
-            this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"));
+            this(System.currentTimeMillis(), level, message, exception);
+        }
+
+        LogEntry(long time, String level, String message, String exception) {
+            this.time = time;
             this.level = level;
             this.message = message;
             this.exception = exception;
         }
 
         public String getTimestamp() {
-            return timestamp;
+            return FORMATTER.format(Instant.ofEpochMilli(time));
+        }
+
+        public long getTime() {
+            return time;
         }
 
         public String getLevel() {
@@ -45,24 +82,44 @@ public class ScriptLogger {
 
         @Override
         public String toString() {
-            String result = String.format("[%s] [%s] %s", timestamp, level, message);
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb);
+            return sb.toString();
+        }
+
+        void appendTo(StringBuilder sb) {
+            sb.append('[');
+            FORMATTER.formatTo(Instant.ofEpochMilli(time), sb);
+            sb.append("] [").append(level).append("] ").append(message);
             if (exception != null && !exception.isEmpty()) {
-                result += "\n" + exception;
+                sb.append('\n').append(exception);
             }
-            return result;
         }
     }
 
+    public ScriptLogger() {
+        this(DEFAULT_CAPACITY, 0, 0, 0);
+    }
+
+    /**
+     * @param capacity   最多保留的日志条数
+     * @param debugLimit DEBUG 日志条数上限，0 表示只受总容量限制（INFO、WARN 同）
+     */
+    public ScriptLogger(int capacity, int debugLimit, int infoLimit, int warnLimit) {
+        this.capacity = Math.max(capacity, 1);
+        this.limits = new int[]{debugLimit, infoLimit, warnLimit, 0};
+    }
+
     public void info(String message) {
-        logs.add(new LogEntry("INFO", message, null));
+        append(INFO, message, null);
     }
 
     public void warn(String message) {
-        logs.add(new LogEntry("WARN", message, null));
+        append(WARN, message, null);
     }
 
     public void error(String message) {
-        logs.add(new LogEntry("ERROR", message, null));
+        append(ERROR, message, null);
     }
 
     public void error(String message, Throwable throwable) {
@@ -76,34 +133,91 @@ public class ScriptLogger {
         if (stackTrace.length > 10) {
             sb.append("    ... ").append(stackTrace.length - 10).append(" more").append("\n");
         }
-        logs.add(new LogEntry("ERROR", message, sb.toString()));
+        append(ERROR, message, sb.toString());
     }
 
     public void debug(String message) {
-        logs.add(new LogEntry("DEBUG", message, null));
+        append(DEBUG, message, null);
+    }
+
+    private synchronized void append(int level, String message, String exception) {
+        if (level == ERROR) {
+            errorCount++;
+        }
+        if (limits[level] > 0 && accepted[level] >= limits[level]) {
+            dropped[level]++;
+            return;
+        }
+        accepted[level]++;
+        if (logs.size() >= capacity) {
+            LogEntry oldest = logs.pollFirst();
+            dropped[levelIndex(oldest.getLevel())]++;
+        }
+        LogEntry entry = new LogEntry(System.currentTimeMillis(), LEVELS[level], message, exception);
+        logs.addLast(entry);
+        if (listener != null) {
+            listener.onLog(entry);
+        }
     }
 
-    public List<LogEntry> getLogs() {
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized List<LogEntry> getLogs() {
         return new ArrayList<>(logs);
     }
 
-    public String getFullLog() {
-        StringBuilder sb = new StringBuilder();
+    public synchronized String getFullLog() {
+        StringBuilder sb = new StringBuilder(logs.size() * 64);
         for (LogEntry entry : logs) {
-            sb.append(entry.toString()).append("\n");
+            entry.appendTo(sb);
+            sb.append("\n");
+        }
+        int droppedTotal = getDroppedCount();
+        if (droppedTotal > 0) {
+            sb.append("... 共丢弃 ").append(droppedTotal).append(" 行日志（");
+            boolean first = true;
+            for (int i = 0; i < LEVELS.length; i++) {
+                if (dropped[i] > 0) {
+                    sb.append(first ? "" : ", ").append(LEVELS[i]).append(": ").append(dropped[i]);
+                    first = false;
+                }
+            }
+            sb.append("）\n");
         }
         return sb.toString();
     }
 
-    public boolean hasErrors() {
-        return logs.stream().anyMatch(entry -> "ERROR".equals(entry.getLevel()));
+    public synchronized int getDroppedCount() {
+        int total = 0;
+        for (int count : dropped) {
+            total += count;
+        }
+        return total;
+    }
+
+    public synchronized boolean hasErrors() {
+        return errorCount > 0;
     }
 
-    public int getErrorCount() {
-        return (int) logs.stream().filter(entry -> "ERROR".equals(entry.getLevel())).count();
+    public synchronized int getErrorCount() {
+        return errorCount;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         logs.clear();
+        Arrays.fill(accepted, 0);
+        Arrays.fill(dropped, 0);
+        errorCount = 0;
+    }
+
+    private static int levelIndex(String level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(level)) {
+                return i;
+            }
+        }
+        return INFO;
     }
 }
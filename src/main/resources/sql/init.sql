@@ -3,7 +3,7 @@
 -- ============================================================================
 -- 说明：
 --   1. 此脚本用于初始化Word生成工具系统的数据库表结构
---   2. 包含模板管理表和生成记录表
+--   2. 包含模板管理表、生成记录表、生成统计汇总表、生成记录归档索引表和归档文件引用表
 --   3. 注意：此脚本需要在已连接到KingBase数据库的情况下执行
 --
 -- 使用方法：
@@ -33,7 +33,14 @@ CREATE TABLE report_template (
     file_type VARCHAR(50),
     file_path VARCHAR(500),
     api_url VARCHAR(500),
+    api_cache_ttl INTEGER,
+    data_sources TEXT,
     groovy_script TEXT,
+    script_timeout INTEGER,
+    script_static BOOLEAN DEFAULT FALSE,
+    max_concurrency INTEGER,
+    retention_days INTEGER,
+    retention_max_count INTEGER,
     status INTEGER DEFAULT 1,
     created_by VARCHAR(100),
     create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -49,7 +56,14 @@ COMMENT ON COLUMN report_template.file_size IS '文件大小（字节）';
 COMMENT ON COLUMN report_template.file_type IS '文件类型（如docx）';
 COMMENT ON COLUMN report_template.file_path IS '文件在MinIO中的存储路径';
 COMMENT ON COLUMN report_template.api_url IS '外部数据接口URL（可选），用于获取数据';
+COMMENT ON COLUMN report_template.api_cache_ttl IS '接口数据缓存时间（秒），为空使用系统默认值，0 表示不缓存';
+COMMENT ON COLUMN report_template.data_sources IS '多数据源配置（JSON数组：name/url/params/timeout），并行获取后按名称合并到 data';
 COMMENT ON COLUMN report_template.groovy_script IS 'Groovy脚本内容（用于存储脚本文本）';
+COMMENT ON COLUMN report_template.script_timeout IS 'Groovy脚本执行超时时间（秒），为空使用系统默认值，0 表示不限制';
+COMMENT ON COLUMN report_template.script_static IS '是否以 @CompileStatic 静态编译 Groovy 脚本（保存时做类型检查）';
+COMMENT ON COLUMN report_template.max_concurrency IS '该模板同时执行的生成任务上限（全部节点），为空使用系统默认值，0 表示不限制';
+COMMENT ON COLUMN report_template.retention_days IS '生成记录保留天数，为空使用系统默认值，0 表示不按时间清理';
+COMMENT ON COLUMN report_template.retention_max_count IS '生成记录最多保留条数（超出的最早记录被清理），为空使用系统默认值，0 表示不限制';
 COMMENT ON COLUMN report_template.status IS '状态：1-启用，0-禁用';
 COMMENT ON COLUMN report_template.created_by IS '创建人';
 COMMENT ON COLUMN report_template.create_time IS '创建时间';
@@ -79,8 +93,17 @@ CREATE TABLE report_generation (
     file_path VARCHAR(500),
     file_url VARCHAR(500),
     status INTEGER DEFAULT 0,
+    stage VARCHAR(20),
+    progress INTEGER DEFAULT 0,
     error_message TEXT,
     execution_log TEXT,
+    execution_log_path VARCHAR(500),
+    idempotency_key VARCHAR(64),
+    reused_from BIGINT,
+    claimed_by VARCHAR(200),
+    lease_expire_time TIMESTAMP,
+    heartbeat_time TIMESTAMP,
+    attempt_count INTEGER DEFAULT 0,
     created_by VARCHAR(100),
     create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -98,8 +121,17 @@ COMMENT ON COLUMN report_generation.file_size IS '文件大小（字节）';
 COMMENT ON COLUMN report_generation.file_path IS '文件在MinIO中的存储路径';
 COMMENT ON COLUMN report_generation.file_url IS '文件访问URL';
 COMMENT ON COLUMN report_generation.status IS '状态：0-生成中，1-成功，2-失败';
+COMMENT ON COLUMN report_generation.stage IS '生成阶段：QUEUED/STARTING/FETCHING/SCRIPTING/RENDERING/UPLOADING/DONE/FAILED';
+COMMENT ON COLUMN report_generation.progress IS '生成进度（0-100）';
 COMMENT ON COLUMN report_generation.error_message IS '错误信息（失败时记录，已包含在 execution_log 中）';
 COMMENT ON COLUMN report_generation.execution_log IS 'Groovy脚本执行日志（包含INFO/WARN/ERROR级别日志和异常堆栈）';
+COMMENT ON COLUMN report_generation.execution_log_path IS '完整执行日志在MinIO中的路径（日志过长时转存，execution_log 只保留首尾摘要）';
+COMMENT ON COLUMN report_generation.idempotency_key IS '幂等键（模板版本 + 参数 + 接口数据的 SHA-256）';
+COMMENT ON COLUMN report_generation.reused_from IS '复用的原生成记录ID（复用时与原记录共用同一文件）';
+COMMENT ON COLUMN report_generation.claimed_by IS '领取该任务的节点ID';
+COMMENT ON COLUMN report_generation.lease_expire_time IS '任务租约到期时间，执行节点定期续约，过期未完成的任务会重新排队';
+COMMENT ON COLUMN report_generation.heartbeat_time IS '执行节点最后一次心跳时间';
+COMMENT ON COLUMN report_generation.attempt_count IS '已领取执行的次数';
 COMMENT ON COLUMN report_generation.created_by IS '创建人';
 COMMENT ON COLUMN report_generation.create_time IS '创建时间';
 COMMENT ON COLUMN report_generation.update_time IS '更新时间';
@@ -107,6 +139,90 @@ COMMENT ON COLUMN report_generation.deleted IS '逻辑删除标记：0-未删除
 COMMENT ON TABLE report_generation IS '报表生成记录表：存储Word生成历史记录';
 
 
+-- ============================================================================
+-- 表3: report_statistics (生成统计汇总表)
+-- 功能：按模板累计生成次数、耗时分布和存储量，由应用定期增量合并写入，概览页不再扫描生成记录表
+-- ============================================================================
+
+DROP TABLE IF EXISTS report_statistics CASCADE;
+
+CREATE TABLE report_statistics (
+    template_id BIGINT PRIMARY KEY,
+    template_name VARCHAR(255),
+    total_count BIGINT DEFAULT 0,
+    success_count BIGINT DEFAULT 0,
+    failure_count BIGINT DEFAULT 0,
+    total_duration_ms BIGINT DEFAULT 0,
+    bytes_stored BIGINT DEFAULT 0,
+    duration_histogram BIGINT[],
+    update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON COLUMN report_statistics.template_id IS '模板ID，0 表示全部模板汇总';
+COMMENT ON COLUMN report_statistics.template_name IS '模板名称';
+COMMENT ON COLUMN report_statistics.total_count IS '已完成的生成次数（成功 + 失败）';
+COMMENT ON COLUMN report_statistics.success_count IS '成功次数';
+COMMENT ON COLUMN report_statistics.failure_count IS '失败次数';
+COMMENT ON COLUMN report_statistics.total_duration_ms IS '累计生成耗时（毫秒），用于计算平均耗时';
+COMMENT ON COLUMN report_statistics.bytes_stored IS '当前存储的报表文件字节数（删除记录时扣减）';
+COMMENT ON COLUMN report_statistics.duration_histogram IS '耗时分布直方图（各桶计数，桶边界见 GenerationStatistics），用于估算 p95';
+COMMENT ON COLUMN report_statistics.update_time IS '最后合并时间';
+COMMENT ON TABLE report_statistics IS '生成统计汇总表：概览页统计数据的持久化检查点';
+
+
+-- ============================================================================
+-- 表4: report_generation_archive (生成记录归档索引表)
+-- 功能：超过归档期限的生成记录以 gzip 压缩的 NDJSON 段文件存入 MinIO，本表按块记录 ID 范围与段内位置，按 ID 查询时只读取所在的块
+-- ============================================================================
+
+DROP TABLE IF EXISTS report_generation_archive CASCADE;
+
+CREATE TABLE report_generation_archive (
+    id BIGSERIAL PRIMARY KEY,
+    segment_path VARCHAR(500) NOT NULL,
+    min_id BIGINT NOT NULL,
+    max_id BIGINT NOT NULL,
+    byte_offset BIGINT NOT NULL,
+    byte_length BIGINT NOT NULL,
+    record_count INTEGER NOT NULL,
+    create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON COLUMN report_generation_archive.id IS '块ID，主键，自增';
+COMMENT ON COLUMN report_generation_archive.segment_path IS '段文件在MinIO中的路径（多个 gzip 块首尾相接，整体可直接用 zcat 读取）';
+COMMENT ON COLUMN report_generation_archive.min_id IS '块内最小生成记录ID';
+COMMENT ON COLUMN report_generation_archive.max_id IS '块内最大生成记录ID';
+COMMENT ON COLUMN report_generation_archive.byte_offset IS '块在段文件中的起始字节位置';
+COMMENT ON COLUMN report_generation_archive.byte_length IS '块的压缩后字节数';
+COMMENT ON COLUMN report_generation_archive.record_count IS '块内记录数';
+COMMENT ON COLUMN report_generation_archive.create_time IS '归档时间';
+COMMENT ON TABLE report_generation_archive IS '生成记录归档索引表：ID 范围 → 段文件/位置';
+
+
+-- ============================================================================
+-- 表5: report_generation_archive_file (归档文件引用表)
+-- 功能：记录已归档的生成记录仍在引用的报表文件（按源记录，复用记录与源记录共用文件），
+--       删除在线记录和保留策略清理时据此判断文件是否仍被归档记录引用；保留策略清理归档文件后 file_path 置空
+-- ============================================================================
+
+DROP TABLE IF EXISTS report_generation_archive_file CASCADE;
+
+CREATE TABLE report_generation_archive_file (
+    source_id BIGINT PRIMARY KEY,
+    template_id BIGINT,
+    file_path VARCHAR(500),
+    file_size BIGINT,
+    last_reference_time TIMESTAMP NOT NULL
+);
+
+COMMENT ON COLUMN report_generation_archive_file.source_id IS '文件所属的源生成记录ID（复用记录的 reused_from）';
+COMMENT ON COLUMN report_generation_archive_file.template_id IS '模板ID';
+COMMENT ON COLUMN report_generation_archive_file.file_path IS '报表文件在MinIO中的路径，保留策略清理后为空';
+COMMENT ON COLUMN report_generation_archive_file.file_size IS '文件大小（字节）';
+COMMENT ON COLUMN report_generation_archive_file.last_reference_time IS '引用该文件的归档记录中最晚的创建时间，按模板保留天数清理';
+COMMENT ON TABLE report_generation_archive_file IS '归档文件引用表：已归档记录引用的报表文件';
+
+
 -- ============================================================================
 -- 索引创建
 -- 功能：提高查询性能
@@ -115,16 +231,30 @@ COMMENT ON TABLE report_generation IS '报表生成记录表：存储Word生成
 -- 删除已存在的索引
 DROP INDEX IF EXISTS idx_template_name;
 DROP INDEX IF EXISTS idx_template_deleted;
-DROP INDEX IF EXISTS idx_generation_template_id;
 DROP INDEX IF EXISTS idx_generation_deleted;
+DROP INDEX IF EXISTS idx_generation_pending;
+DROP INDEX IF EXISTS idx_generation_idempotency;
+DROP INDEX IF EXISTS idx_generation_reused_from;
+DROP INDEX IF EXISTS idx_generation_create_time;
+DROP INDEX IF EXISTS idx_generation_template_create_time;
+DROP INDEX IF EXISTS idx_generation_archive_id_range;
+DROP INDEX IF EXISTS idx_generation_archive_file_template;
 
 -- 模板表索引
 CREATE INDEX idx_template_name ON report_template(name);           -- 按模板名称查询
 CREATE INDEX idx_template_deleted ON report_template(deleted);       -- 按删除标记查询
 
 -- 生成记录表索引
-CREATE INDEX idx_generation_template_id ON report_generation(template_id);  -- 按模板ID查询
 CREATE INDEX idx_generation_deleted ON report_generation(deleted);        -- 按删除标记查询
+CREATE INDEX idx_generation_pending ON report_generation(stage, id) WHERE status = 0;  -- 异步任务恢复扫描
+CREATE INDEX idx_generation_idempotency ON report_generation(idempotency_key, create_time) WHERE status = 1;  -- 幂等复用查询
+CREATE INDEX idx_generation_reused_from ON report_generation(reused_from) WHERE reused_from IS NOT NULL;  -- 删除时检查共享文件
+CREATE INDEX idx_generation_create_time ON report_generation(create_time DESC, id DESC) WHERE deleted = 0;  -- 生成记录列表游标分页
+CREATE INDEX idx_generation_template_create_time ON report_generation(template_id, create_time DESC, id DESC) WHERE deleted = 0;  -- 按模板的游标分页
+
+-- 归档索引表索引
+CREATE INDEX idx_generation_archive_id_range ON report_generation_archive USING gist (int8range(min_id, max_id, '[]'));  -- 按记录ID查找所在的块（区间包含查询）
+CREATE INDEX idx_generation_archive_file_template ON report_generation_archive_file(template_id, last_reference_time) WHERE file_path IS NOT NULL;  -- 保留策略清理归档文件
 
 
 -- ============================================================================
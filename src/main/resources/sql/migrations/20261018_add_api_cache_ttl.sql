@@ -0,0 +1,5 @@
+-- 添加模板接口数据缓存时间字段
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS api_cache_ttl INTEGER;
+
+COMMENT ON COLUMN report_template.api_cache_ttl IS '接口数据缓存时间（秒），为空使用系统默认值，0 表示不缓存';
@@ -0,0 +1,5 @@
+-- 添加模板多数据源配置字段
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS data_sources TEXT;
+
+COMMENT ON COLUMN report_template.data_sources IS '多数据源配置（JSON数组：name/url/params/timeout），并行获取后按名称合并到 data';
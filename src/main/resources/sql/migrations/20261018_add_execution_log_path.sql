@@ -0,0 +1,5 @@
+-- 添加执行日志转存路径字段
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS execution_log_path VARCHAR(500);
+
+COMMENT ON COLUMN report_generation.execution_log_path IS '完整执行日志在MinIO中的路径（日志过长时转存，execution_log 只保留首尾摘要）';
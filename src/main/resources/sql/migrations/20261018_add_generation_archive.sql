@@ -0,0 +1,23 @@
+-- 生成记录归档索引表：超过归档期限的记录以 gzip 压缩的 NDJSON 段文件存入 MinIO，本表记录 ID 范围 → 段文件/位置
+CREATE TABLE IF NOT EXISTS report_generation_archive (
+    id BIGSERIAL PRIMARY KEY,
+    segment_path VARCHAR(500) NOT NULL,
+    min_id BIGINT NOT NULL,
+    max_id BIGINT NOT NULL,
+    byte_offset BIGINT NOT NULL,
+    byte_length BIGINT NOT NULL,
+    record_count INTEGER NOT NULL,
+    create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON COLUMN report_generation_archive.id IS '块ID，主键，自增';
+COMMENT ON COLUMN report_generation_archive.segment_path IS '段文件在MinIO中的路径（多个 gzip 块首尾相接，整体可直接用 zcat 读取）';
+COMMENT ON COLUMN report_generation_archive.min_id IS '块内最小生成记录ID';
+COMMENT ON COLUMN report_generation_archive.max_id IS '块内最大生成记录ID';
+COMMENT ON COLUMN report_generation_archive.byte_offset IS '块在段文件中的起始字节位置';
+COMMENT ON COLUMN report_generation_archive.byte_length IS '块的压缩后字节数';
+COMMENT ON COLUMN report_generation_archive.record_count IS '块内记录数';
+COMMENT ON COLUMN report_generation_archive.create_time IS '归档时间';
+COMMENT ON TABLE report_generation_archive IS '生成记录归档索引表：ID 范围 → 段文件/位置';
+
+CREATE INDEX IF NOT EXISTS idx_generation_archive_id_range ON report_generation_archive(min_id, max_id);
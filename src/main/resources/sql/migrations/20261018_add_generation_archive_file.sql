@@ -0,0 +1,20 @@
+-- 归档文件引用表：已归档的生成记录仍在引用的报表文件（按源记录），
+-- 删除在线记录和保留策略清理时据此判断文件是否仍被归档记录引用
+CREATE TABLE IF NOT EXISTS report_generation_archive_file (
+    source_id BIGINT PRIMARY KEY,
+    template_id BIGINT,
+    file_path VARCHAR(500),
+    file_size BIGINT,
+    last_reference_time TIMESTAMP NOT NULL
+);
+
+COMMENT ON COLUMN report_generation_archive_file.source_id IS '文件所属的源生成记录ID（复用记录的 reused_from）';
+COMMENT ON COLUMN report_generation_archive_file.template_id IS '模板ID';
+COMMENT ON COLUMN report_generation_archive_file.file_path IS '报表文件在MinIO中的路径，保留策略清理后为空';
+COMMENT ON COLUMN report_generation_archive_file.file_size IS '文件大小（字节）';
+COMMENT ON COLUMN report_generation_archive_file.last_reference_time IS '引用该文件的归档记录中最晚的创建时间，按模板保留天数清理';
+COMMENT ON TABLE report_generation_archive_file IS '归档文件引用表：已归档记录引用的报表文件';
+
+CREATE INDEX IF NOT EXISTS idx_generation_archive_file_template
+    ON report_generation_archive_file(template_id, last_reference_time) WHERE file_path IS NOT NULL;
+
@@ -0,0 +1,11 @@
+-- 多节点领取异步生成任务：领取节点、租约与心跳
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS claimed_by VARCHAR(200),
+ADD COLUMN IF NOT EXISTS lease_expire_time TIMESTAMP,
+ADD COLUMN IF NOT EXISTS heartbeat_time TIMESTAMP,
+ADD COLUMN IF NOT EXISTS attempt_count INTEGER DEFAULT 0;
+
+COMMENT ON COLUMN report_generation.claimed_by IS '领取该任务的节点ID';
+COMMENT ON COLUMN report_generation.lease_expire_time IS '任务租约到期时间，执行节点定期续约，过期未完成的任务会重新排队';
+COMMENT ON COLUMN report_generation.heartbeat_time IS '执行节点最后一次心跳时间';
+COMMENT ON COLUMN report_generation.attempt_count IS '已领取执行的次数';
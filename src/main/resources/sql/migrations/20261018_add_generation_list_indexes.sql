@@ -0,0 +1,10 @@
+-- 生成记录列表游标分页索引：(create_time, id) 与 (template_id, create_time, id)
+-- 大表上线时建议改用 CREATE INDEX CONCURRENTLY 避免锁表
+DROP INDEX IF EXISTS idx_generation_create_time;
+DROP INDEX IF EXISTS idx_generation_template_create_time;
+
+CREATE INDEX idx_generation_create_time ON report_generation(create_time DESC, id DESC) WHERE deleted = 0;
+CREATE INDEX idx_generation_template_create_time ON report_generation(template_id, create_time DESC, id DESC) WHERE deleted = 0;
+
+-- 按模板的新索引以 template_id 开头，可以覆盖原来的单列索引
+DROP INDEX IF EXISTS idx_generation_template_id;
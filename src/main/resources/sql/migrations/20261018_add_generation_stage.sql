@@ -0,0 +1,11 @@
+-- 添加生成阶段和进度字段，用于异步生成任务的状态查询和重启恢复
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS stage VARCHAR(20);
+
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS progress INTEGER DEFAULT 0;
+
+COMMENT ON COLUMN report_generation.stage IS '生成阶段：QUEUED/STARTING/FETCHING/SCRIPTING/RENDERING/UPLOADING/DONE/FAILED';
+COMMENT ON COLUMN report_generation.progress IS '生成进度（0-100）';
+
+CREATE INDEX IF NOT EXISTS idx_generation_pending ON report_generation(stage, id) WHERE status = 0;
@@ -0,0 +1,12 @@
+-- 添加幂等复用字段
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(64);
+
+ALTER TABLE report_generation
+ADD COLUMN IF NOT EXISTS reused_from BIGINT;
+
+COMMENT ON COLUMN report_generation.idempotency_key IS '幂等键（模板版本 + 参数 + 接口数据的 SHA-256）';
+COMMENT ON COLUMN report_generation.reused_from IS '复用的原生成记录ID（复用时与原记录共用同一文件）';
+
+CREATE INDEX IF NOT EXISTS idx_generation_idempotency ON report_generation(idempotency_key, create_time) WHERE status = 1;
+CREATE INDEX IF NOT EXISTS idx_generation_reused_from ON report_generation(reused_from) WHERE reused_from IS NOT NULL;
@@ -0,0 +1,23 @@
+-- 生成统计汇总表：概览页统计数据的持久化检查点（首次启动时应用会从 report_generation 汇总一次）
+CREATE TABLE IF NOT EXISTS report_statistics (
+    template_id BIGINT PRIMARY KEY,
+    template_name VARCHAR(255),
+    total_count BIGINT DEFAULT 0,
+    success_count BIGINT DEFAULT 0,
+    failure_count BIGINT DEFAULT 0,
+    total_duration_ms BIGINT DEFAULT 0,
+    bytes_stored BIGINT DEFAULT 0,
+    duration_histogram BIGINT[],
+    update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+COMMENT ON COLUMN report_statistics.template_id IS '模板ID，0 表示全部模板汇总';
+COMMENT ON COLUMN report_statistics.template_name IS '模板名称';
+COMMENT ON COLUMN report_statistics.total_count IS '已完成的生成次数（成功 + 失败）';
+COMMENT ON COLUMN report_statistics.success_count IS '成功次数';
+COMMENT ON COLUMN report_statistics.failure_count IS '失败次数';
+COMMENT ON COLUMN report_statistics.total_duration_ms IS '累计生成耗时（毫秒），用于计算平均耗时';
+COMMENT ON COLUMN report_statistics.bytes_stored IS '当前存储的报表文件字节数（删除记录时扣减）';
+COMMENT ON COLUMN report_statistics.duration_histogram IS '耗时分布直方图（各桶计数，桶边界见 GenerationStatistics），用于估算 p95';
+COMMENT ON COLUMN report_statistics.update_time IS '最后合并时间';
+COMMENT ON TABLE report_statistics IS '生成统计汇总表：概览页统计数据的持久化检查点';
@@ -0,0 +1,5 @@
+-- 添加模板脚本静态编译开关
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS script_static BOOLEAN DEFAULT FALSE;
+
+COMMENT ON COLUMN report_template.script_static IS '是否以 @CompileStatic 静态编译 Groovy 脚本（保存时做类型检查）';
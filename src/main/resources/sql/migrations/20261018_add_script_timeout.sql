@@ -0,0 +1,5 @@
+-- 添加模板脚本执行超时字段
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS script_timeout INTEGER;
+
+COMMENT ON COLUMN report_template.script_timeout IS 'Groovy脚本执行超时时间（秒），为空使用系统默认值，0 表示不限制';
@@ -0,0 +1,5 @@
+-- 添加模板并发上限字段（隔离单个模板占满全部工作线程）
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS max_concurrency INTEGER;
+
+COMMENT ON COLUMN report_template.max_concurrency IS '该模板同时执行的生成任务上限（全部节点），为空使用系统默认值，0 表示不限制';
@@ -0,0 +1,7 @@
+-- 添加模板生成记录保留策略字段
+ALTER TABLE report_template
+ADD COLUMN IF NOT EXISTS retention_days INTEGER,
+ADD COLUMN IF NOT EXISTS retention_max_count INTEGER;
+
+COMMENT ON COLUMN report_template.retention_days IS '生成记录保留天数，为空使用系统默认值，0 表示不按时间清理';
+COMMENT ON COLUMN report_template.retention_max_count IS '生成记录最多保留条数（超出的最早记录被清理），为空使用系统默认值，0 表示不限制';
@@ -0,0 +1,6 @@
+-- 归档块按记录ID查找：(min_id, max_id) 上的 btree 索引对 min_id <= id AND max_id >= id 只能按 min_id 范围扫描，
+-- 归档块越多越慢，改为区间表达式上的 GiST 索引（查询使用 int8range(min_id, max_id, '[]') @> id）
+DROP INDEX IF EXISTS idx_generation_archive_id_range;
+
+CREATE INDEX IF NOT EXISTS idx_generation_archive_id_range
+    ON report_generation_archive USING gist (int8range(min_id, max_id, '[]'));
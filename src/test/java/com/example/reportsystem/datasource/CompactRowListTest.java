@@ -0,0 +1,144 @@
+package com.example.reportsystem.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactRowListTest {
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    private static CompactRowList list(Map<?, ?>... rows) {
+        CompactRowList list = new CompactRowList();
+        for (Map<?, ?> row : rows) {
+            list.append(row);
+        }
+        list.trimToSize();
+        return list;
+    }
+
+    @Test
+    void rowsReadBackAsMaps() {
+        CompactRowList list = list(row("name", "a", "value", 1), row("name", "b", "value", 2));
+
+        assertEquals(2, list.size());
+        assertEquals(Arrays.asList("name", "value"), list.getColumns());
+        assertEquals(row("name", "a", "value", 1), list.get(0));
+        assertEquals("b", list.get(1).get("name"));
+        assertEquals(2, list.get(1).get("value"));
+    }
+
+    @Test
+    void columnsAddedByLaterRowsAreAbsentInEarlierRows() {
+        CompactRowList list = list(row("a", 1), row("a", 2, "b", 3));
+
+        Map<String, Object> first = list.get(0);
+        assertFalse(first.containsKey("b"));
+        assertNull(first.get("b"));
+        assertEquals(1, first.size());
+        assertEquals(row("a", 1), first);
+        assertEquals(row("a", 2, "b", 3), list.get(1));
+    }
+
+    @Test
+    void nullValuesAreKeptAsPresentKeys() {
+        CompactRowList list = list(row("a", null, "b", 1));
+
+        Map<String, Object> first = list.get(0);
+        assertTrue(first.containsKey("a"));
+        assertNull(first.get("a"));
+        assertEquals(2, first.size());
+    }
+
+    @Test
+    void sharedRowsAreReadOnly() {
+        CompactRowList list = list(row("a", 1));
+
+        assertThrows(UnsupportedOperationException.class, () -> list.get(0).put("a", 2));
+        assertThrows(UnsupportedOperationException.class, () -> list.add(row("a", 3)));
+    }
+
+    @Test
+    void mutableViewCopiesRowOnFirstWrite() {
+        CompactRowList list = list(row("a", 1), row("a", 2));
+        List<Map<String, Object>> view = list.mutableView();
+
+        view.get(0).put("a", 10);
+        view.get(0).put("b", "new");
+        view.get(1).remove("a");
+
+        assertEquals(row("a", 10, "b", "new"), view.get(0));
+        assertTrue(view.get(1).isEmpty());
+        assertEquals(row("a", 1), list.get(0));
+        assertEquals(row("a", 2), list.get(1));
+    }
+
+    @Test
+    void entrySetValueWritesThroughCopyOnWriteRow() {
+        CompactRowList list = list(row("a", 1, "b", 2));
+        List<Map<String, Object>> view = list.mutableView();
+
+        for (Map.Entry<String, Object> entry : view.get(0).entrySet()) {
+            entry.setValue(((Integer) entry.getValue()) * 10);
+        }
+
+        assertEquals(row("a", 10, "b", 20), view.get(0));
+        assertEquals(row("a", 1, "b", 2), list.get(0));
+    }
+
+    @Test
+    void mutableViewsAreIndependent() {
+        CompactRowList list = list(row("a", 1));
+        List<Map<String, Object>> first = list.mutableView();
+        List<Map<String, Object>> second = list.mutableView();
+
+        first.get(0).put("a", 100);
+
+        assertEquals(100, first.get(0).get("a"));
+        assertEquals(1, second.get(0).get("a"));
+    }
+
+    @Test
+    void structuralChangesKeepEarlierRowEdits() {
+        CompactRowList list = list(row("n", 3), row("n", 1), row("n", 2));
+        List<Map<String, Object>> view = list.mutableView();
+        view.get(0).put("edited", true);
+
+        view.sort(Comparator.comparing(r -> (Integer) r.get("n")));
+        view.add(row("n", 4));
+        view.remove(0);
+
+        assertEquals(3, view.size());
+        assertEquals(2, view.get(0).get("n"));
+        assertEquals(row("n", 3, "edited", true), view.get(1));
+        assertEquals(4, view.get(2).get("n"));
+        assertEquals(3, list.size());
+        assertEquals(row("n", 3), list.get(0));
+    }
+
+    @Test
+    void appendAcceptsNonStringKeys() {
+        Map<Object, Object> raw = new HashMap<>();
+        raw.put(1, "one");
+        CompactRowList list = list(raw);
+
+        assertEquals("one", list.get(0).get("1"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.reportsystem.datasource;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingJsonParserTest {
+
+    private static StreamingJsonParser.Result parse(String json, long maxBytes) throws IOException {
+        return StreamingJsonParser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, maxBytes);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void objectArraysInTopLevelObjectBecomeCompactRowLists() throws IOException {
+        String json = "{\"title\":\"月报\",\"total\":2,\"meta\":{\"page\":1},"
+                + "\"rows\":[{\"name\":\"a\",\"value\":1},{\"name\":\"b\",\"value\":2,\"note\":\"x\"}]}";
+
+        StreamingJsonParser.Result result = parse(json, 0);
+
+        Map<String, Object> data = (Map<String, Object>) result.getData();
+        assertEquals(Arrays.asList("title", "total", "meta", "rows"), Arrays.asList(data.keySet().toArray()));
+        assertEquals("月报", data.get("title"));
+        assertEquals(2, data.get("total"));
+        assertEquals(1, ((Map<String, Object>) data.get("meta")).get("page"));
+
+        CompactRowList rows = assertInstanceOf(CompactRowList.class, data.get("rows"));
+        assertEquals(2, rows.size());
+        assertEquals("a", rows.get(0).get("name"));
+        assertFalse(rows.get(0).containsKey("note"));
+        assertEquals("x", rows.get(1).get("note"));
+
+        assertEquals(2, result.getRows());
+        assertEquals(json.getBytes(StandardCharsets.UTF_8).length, result.getBytes());
+    }
+
+    @Test
+    void topLevelArrayIsParsed() throws IOException {
+        StreamingJsonParser.Result result = parse("[{\"id\":1},{\"id\":2},{\"id\":3}]", 0);
+
+        CompactRowList rows = assertInstanceOf(CompactRowList.class, result.getData());
+        assertEquals(3, rows.size());
+        assertEquals(3, rows.get(2).get("id"));
+        assertEquals(3, result.getRows());
+    }
+
+    @Test
+    void arraysWithNonObjectElementsStayPlainLists() throws IOException {
+        StreamingJsonParser.Result result = parse("{\"mixed\":[{\"id\":1},2,\"three\"],\"numbers\":[1,2]}", 0);
+
+        Map<?, ?> data = (Map<?, ?>) result.getData();
+        List<?> mixed = (List<?>) data.get("mixed");
+        assertFalse(mixed instanceof CompactRowList);
+        assertEquals(3, mixed.size());
+        assertEquals(1, ((Map<?, ?>) mixed.get(0)).get("id"));
+        assertEquals("three", mixed.get(2));
+
+        List<?> numbers = (List<?>) data.get("numbers");
+        assertFalse(numbers instanceof CompactRowList);
+        assertEquals(Arrays.asList(1, 2), numbers);
+        assertEquals(5, result.getRows());
+    }
+
+    @Test
+    void emptyArrayBecomesEmptyRowList() throws IOException {
+        Map<?, ?> data = (Map<?, ?>) parse("{\"rows\":[]}", 0).getData();
+
+        List<?> rows = (List<?>) data.get("rows");
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    void payloadOverLimitIsRejected() {
+        StringBuilder json = new StringBuilder("{\"rows\":[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+        }
+        json.append("]}");
+
+        assertThrows(StreamingJsonParser.PayloadTooLargeException.class, () -> parse(json.toString(), 1024));
+    }
+
+    @Test
+    void limitWrapsPlainStreams() throws IOException {
+        byte[] content = new byte[100];
+
+        try (InputStream within = StreamingJsonParser.limit(new ByteArrayInputStream(content), 100)) {
+            assertEquals(100, IOUtils.toByteArray(within).length);
+        }
+        try (InputStream unlimited = StreamingJsonParser.limit(new ByteArrayInputStream(content), 0)) {
+            assertEquals(100, IOUtils.toByteArray(unlimited).length);
+        }
+        InputStream over = StreamingJsonParser.limit(new ByteArrayInputStream(content), 99);
+        assertThrows(StreamingJsonParser.PayloadTooLargeException.class, () -> IOUtils.toByteArray(over));
+    }
+}
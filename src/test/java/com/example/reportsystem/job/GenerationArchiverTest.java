@@ -0,0 +1,192 @@
+package com.example.reportsystem.job;
+
+import com.alibaba.fastjson.JSON;
+import com.example.reportsystem.entity.ReportGeneration;
+import com.example.reportsystem.entity.ReportGenerationArchive;
+import com.example.reportsystem.entity.ReportGenerationArchiveFile;
+import com.example.reportsystem.mapper.ReportGenerationArchiveFileMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GenerationArchiverTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2026, 6, 1, 8, 0);
+
+    private ReportGenerationArchiveFileMapper archiveFileMapper;
+    private GenerationArchiver archiver;
+
+    @BeforeEach
+    void setUp() {
+        archiveFileMapper = mock(ReportGenerationArchiveFileMapper.class);
+        archiver = new GenerationArchiver();
+        ReflectionTestUtils.setField(archiver, "archiveFileMapper", archiveFileMapper);
+    }
+
+    private static ReportGeneration generation(Long id, Long reusedFrom, String filePath, LocalDateTime createTime) {
+        ReportGeneration generation = new ReportGeneration();
+        generation.setId(id);
+        generation.setTemplateId(7L);
+        generation.setReusedFrom(reusedFrom);
+        generation.setFilePath(filePath);
+        generation.setFileSize(filePath != null ? 1024L : null);
+        generation.setCreateTime(createTime);
+        generation.setStatus(1);
+        return generation;
+    }
+
+    private static ReportGenerationArchiveFile fileState(Long sourceId, String filePath) {
+        ReportGenerationArchiveFile file = new ReportGenerationArchiveFile();
+        file.setSourceId(sourceId);
+        file.setFilePath(filePath);
+        return file;
+    }
+
+    @Test
+    void addFileReferenceGroupsReusedRecordsBySource() {
+        GenerationArchiver.Segment segment = new GenerationArchiver.Segment(1024);
+
+        GenerationArchiver.addFileReference(segment, generation(1L, null, "generated/7/a.docx", DAY));
+        GenerationArchiver.addFileReference(segment, generation(2L, 1L, "generated/7/a.docx", DAY.plusDays(3)));
+        GenerationArchiver.addFileReference(segment, generation(3L, 1L, "generated/7/a.docx", DAY.plusDays(1)));
+        GenerationArchiver.addFileReference(segment, generation(4L, null, "generated/7/b.docx", DAY));
+
+        assertEquals(Arrays.asList(1L, 4L), Arrays.asList(segment.files.keySet().toArray()));
+        ReportGenerationArchiveFile reference = segment.files.get(1L);
+        assertEquals(Long.valueOf(1L), reference.getSourceId());
+        assertEquals(Long.valueOf(7L), reference.getTemplateId());
+        assertEquals("generated/7/a.docx", reference.getFilePath());
+        assertEquals(Long.valueOf(1024L), reference.getFileSize());
+        assertEquals(DAY.plusDays(3), reference.getLastReferenceTime());
+    }
+
+    @Test
+    void addFileReferenceFromReusedRecordFirst() {
+        GenerationArchiver.Segment segment = new GenerationArchiver.Segment(1024);
+
+        GenerationArchiver.addFileReference(segment, generation(5L, 1L, "generated/7/a.docx", DAY.plusDays(2)));
+        GenerationArchiver.addFileReference(segment, generation(6L, 1L, "generated/7/a.docx", null));
+
+        ReportGenerationArchiveFile reference = segment.files.get(1L);
+        assertEquals(Long.valueOf(1L), reference.getSourceId());
+        assertEquals(DAY.plusDays(2), reference.getLastReferenceTime());
+    }
+
+    @Test
+    void addFileReferenceSkipsRecordsWithoutFile() {
+        GenerationArchiver.Segment segment = new GenerationArchiver.Segment(1024);
+
+        GenerationArchiver.addFileReference(segment, generation(1L, null, null, DAY));
+
+        assertTrue(segment.files.isEmpty());
+    }
+
+    @Test
+    void writeBlockWritesIndependentGzipMembers() throws IOException {
+        GenerationArchiver.Segment segment = new GenerationArchiver.Segment(1024 * 1024);
+        ReportGeneration withLog = generation(1L, null, "generated/7/a.docx", DAY);
+        withLog.setExecutionLogPath("logs/1.log");
+        withLog.setExecutionLog("摘要");
+
+        GenerationArchiver.writeBlock(segment, Arrays.asList(withLog, generation(2L, 1L, "generated/7/a.docx", DAY)));
+        GenerationArchiver.writeBlock(segment, Arrays.asList(generation(3L, null, null, DAY)));
+        segment.content.close();
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), segment.ids);
+        assertEquals(Arrays.asList("logs/1.log"), segment.logPaths);
+        assertEquals(1, segment.files.size());
+        assertEquals(2, segment.blocks.size());
+
+        byte[] content = segment.content.getData();
+        ReportGenerationArchive first = segment.blocks.get(0);
+        ReportGenerationArchive second = segment.blocks.get(1);
+        assertEquals(Long.valueOf(0), first.getByteOffset());
+        assertEquals(Long.valueOf(first.getByteOffset() + first.getByteLength()), second.getByteOffset());
+        assertEquals(content.length, second.getByteOffset() + second.getByteLength());
+        assertEquals(Long.valueOf(1L), first.getMinId());
+        assertEquals(Long.valueOf(2L), first.getMaxId());
+        assertEquals(Integer.valueOf(2), first.getRecordCount());
+
+        List<ReportGeneration> firstRows = readBlock(content, first);
+        assertEquals(2, firstRows.size());
+        assertNull(firstRows.get(0).getExecutionLogPath());
+        assertEquals("摘要", firstRows.get(0).getExecutionLog());
+        assertEquals(Long.valueOf(3L), readBlock(content, second).get(0).getId());
+    }
+
+    @Test
+    void withFileStateClearsPurgedFile() {
+        when(archiveFileMapper.selectById(1L)).thenReturn(fileState(1L, null));
+        ReportGeneration reused = generation(2L, 1L, "generated/7/a.docx", DAY);
+        reused.setFileUrl("/download/2");
+
+        ReportGeneration result = archiver.withFileState(reused);
+
+        assertNull(result.getFilePath());
+        assertNull(result.getFileUrl());
+    }
+
+    @Test
+    void withFileStateKeepsExistingFile() {
+        when(archiveFileMapper.selectById(1L)).thenReturn(fileState(1L, "generated/7/a.docx"));
+
+        ReportGeneration result = archiver.withFileState(generation(1L, null, "generated/7/a.docx", DAY));
+
+        assertEquals("generated/7/a.docx", result.getFilePath());
+    }
+
+    @Test
+    void withFileStateSkipsLookupWithoutFile() {
+        archiver.withFileState(generation(1L, null, null, DAY));
+
+        verify(archiveFileMapper, never()).selectById(1L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void findReturnsIndependentCopiesFromCache() {
+        Map<Long, String> readCache = (Map<Long, String>) ReflectionTestUtils.getField(archiver, "readCache");
+        readCache.put(1L, JSON.toJSONString(generation(1L, null, "generated/7/a.docx", DAY)));
+        when(archiveFileMapper.selectById(1L)).thenReturn(fileState(1L, "generated/7/a.docx"));
+
+        ReportGeneration first = archiver.find(1L);
+        first.setFilePath(null);
+        first.setTemplateName("changed");
+        ReportGeneration second = archiver.find(1L);
+
+        assertTrue(second.getArchived());
+        assertEquals("generated/7/a.docx", second.getFilePath());
+        assertNull(second.getTemplateName());
+    }
+
+    private static List<ReportGeneration> readBlock(byte[] content, ReportGenerationArchive block) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(content,
+                block.getByteOffset().intValue(), block.getByteLength().intValue());
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .map(line -> JSON.parseObject(line, ReportGeneration.class))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.reportsystem.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonDigestTest {
+
+    @Test
+    void digestIsLowercaseHexSha256() {
+        String digest = JsonDigest.sha256("report");
+
+        assertEquals(64, digest.length());
+        assertTrue(digest.matches("[0-9a-f]{64}"));
+        assertEquals(digest, JsonDigest.sha256("report"));
+    }
+
+    @Test
+    void mapKeyOrderDoesNotAffectDigest() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("b", 2);
+        first.put("a", 1);
+        first.put("nested", nested("y", "x"));
+
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("nested", nested("x", "y"));
+        second.put("a", 1);
+        second.put("b", 2);
+
+        assertEquals(JsonDigest.sha256(1L, first), JsonDigest.sha256(1L, second));
+    }
+
+    @Test
+    void differentValuesProduceDifferentDigests() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("month", "2026-09");
+        Map<String, Object> changed = new HashMap<>(params);
+        changed.put("month", "2026-10");
+
+        assertNotEquals(JsonDigest.sha256(1L, params), JsonDigest.sha256(1L, changed));
+        assertNotEquals(JsonDigest.sha256(1L, params), JsonDigest.sha256(2L, params));
+    }
+
+    @Test
+    void partBoundariesAreSignificant() {
+        assertNotEquals(JsonDigest.sha256("ab", "c"), JsonDigest.sha256("a", "bc"));
+        assertNotEquals(JsonDigest.sha256(Arrays.asList(1, 2)), JsonDigest.sha256(1, 2));
+    }
+
+    @Test
+    void nullPartsAreAccepted() {
+        assertEquals(JsonDigest.sha256(1L, null, "x"), JsonDigest.sha256(1L, null, "x"));
+        assertNotEquals(JsonDigest.sha256(1L, null, "x"), JsonDigest.sha256(1L, "x"));
+    }
+
+    private static Map<String, Object> nested(String firstKey, String secondKey) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(firstKey, firstKey.toUpperCase());
+        map.put(secondKey, secondKey.toUpperCase());
+        return map;
+    }
+}
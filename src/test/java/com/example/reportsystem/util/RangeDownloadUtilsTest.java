@@ -0,0 +1,116 @@
+package com.example.reportsystem.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RangeDownloadUtilsTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    private final long[] opened = new long[]{-1, -1};
+
+    private final RangeDownloadUtils.RangeOpener opener = (offset, length) -> {
+        opened[0] = offset;
+        opened[1] = length != null ? length : -1;
+        int end = length != null ? (int) (offset + length) : CONTENT.length;
+        return new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, (int) offset, end));
+    };
+
+    private MockHttpServletResponse download(String range) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RangeDownloadUtils.write(request, response, "报表.docx", CONTENT.length, opener);
+        return response;
+    }
+
+    @Test
+    void withoutRangeReturnsWholeFile() throws Exception {
+        MockHttpServletResponse response = download(null);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT.length, response.getContentLengthLong());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(CONTENT, response.getContentAsByteArray());
+        assertEquals(0, opened[0]);
+        assertEquals(-1, opened[1]);
+    }
+
+    @Test
+    void singleRangeReturnsPartialContent() throws Exception {
+        MockHttpServletResponse response = download("bytes=2-5");
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals(2, opened[0]);
+        assertEquals(4, opened[1]);
+    }
+
+    @Test
+    void openEndedAndSuffixRanges() throws Exception {
+        MockHttpServletResponse openEnded = download("bytes=7-");
+        assertEquals(206, openEnded.getStatus());
+        assertEquals("bytes 7-9/10", openEnded.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", openEnded.getContentAsString());
+
+        MockHttpServletResponse suffix = download("bytes=-4");
+        assertEquals(206, suffix.getStatus());
+        assertEquals("bytes 6-9/10", suffix.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("6789", suffix.getContentAsString());
+    }
+
+    @Test
+    void rangeEndBeyondFileIsClamped() throws Exception {
+        MockHttpServletResponse response = download("bytes=8-100");
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 8-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("89", response.getContentAsString());
+    }
+
+    @Test
+    void rangeStartingPastEndIsNotSatisfiable() throws Exception {
+        MockHttpServletResponse response = download("bytes=500-");
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(-1, opened[0]);
+    }
+
+    @Test
+    void multipleOrMalformedRangesReturnWholeFile() throws Exception {
+        MockHttpServletResponse multiple = download("bytes=0-1,4-5");
+        assertEquals(200, multiple.getStatus());
+        assertArrayEquals(CONTENT, multiple.getContentAsByteArray());
+
+        MockHttpServletResponse malformed = download("items=0-1");
+        assertEquals(200, malformed.getStatus());
+        assertArrayEquals(CONTENT, malformed.getContentAsByteArray());
+    }
+
+    @Test
+    void fileNameIsUrlEncoded() throws Exception {
+        MockHttpServletResponse response = download(null);
+
+        String disposition = response.getHeader(HttpHeaders.CONTENT_DISPOSITION);
+        assertEquals("attachment; filename=\"%E6%8A%A5%E8%A1%A8.docx\"", disposition);
+        assertFalse(disposition.contains("报表"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.reportsystem.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScriptLoggerTest {
+
+    private static List<String> messages(ScriptLogger logger) {
+        return logger.getLogs().stream().map(ScriptLogger.LogEntry::getMessage).collect(Collectors.toList());
+    }
+
+    @Test
+    void ringBufferKeepsNewestEntries() {
+        ScriptLogger logger = new ScriptLogger(3, 0, 0, 0);
+        for (int i = 1; i <= 5; i++) {
+            logger.info("m" + i);
+        }
+
+        assertEquals(List.of("m3", "m4", "m5"), messages(logger));
+        assertEquals(2, logger.getDroppedCount());
+        assertTrue(logger.getFullLog().endsWith("... 共丢弃 2 行日志（INFO: 2）\n"));
+    }
+
+    @Test
+    void evictedEntriesAreCountedByTheirOwnLevel() {
+        ScriptLogger logger = new ScriptLogger(2, 0, 0, 0);
+        logger.debug("d");
+        logger.warn("w");
+        logger.info("i1");
+        logger.info("i2");
+
+        assertEquals(List.of("i1", "i2"), messages(logger));
+        assertTrue(logger.getFullLog().endsWith("... 共丢弃 2 行日志（DEBUG: 1, WARN: 1）\n"));
+    }
+
+    @Test
+    void perLevelLimitsDropExcessEntries() {
+        ScriptLogger logger = new ScriptLogger(100, 2, 0, 1);
+        for (int i = 0; i < 5; i++) {
+            logger.debug("d" + i);
+            logger.warn("w" + i);
+        }
+        logger.info("i");
+
+        assertEquals(List.of("d0", "w0", "d1", "i"), messages(logger));
+        assertEquals(7, logger.getDroppedCount());
+        assertTrue(logger.getFullLog().endsWith("（DEBUG: 3, WARN: 4）\n"));
+    }
+
+    @Test
+    void errorsAreNeverLimitedAndAlwaysCounted() {
+        ScriptLogger logger = new ScriptLogger(1, 1, 1, 1);
+        logger.error("e1");
+        logger.error("e2", new IllegalStateException("boom"));
+
+        assertTrue(logger.hasErrors());
+        assertEquals(2, logger.getErrorCount());
+        ScriptLogger.LogEntry last = logger.getLogs().get(0);
+        assertEquals("e2", last.getMessage());
+        assertEquals("ERROR", last.getLevel());
+        assertTrue(last.getException().startsWith("java.lang.IllegalStateException: boom\n"));
+    }
+
+    @Test
+    void fullLogFormatsEachEntry() {
+        ScriptLogger logger = new ScriptLogger();
+        logger.info("开始");
+        logger.error("失败", new RuntimeException("原因"));
+
+        String[] lines = logger.getFullLog().split("\n");
+        assertTrue(lines[0].matches("\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}] \\[INFO] 开始"));
+        assertTrue(lines[1].endsWith("[ERROR] 失败"));
+        assertEquals("java.lang.RuntimeException: 原因", lines[2]);
+        assertFalse(logger.getFullLog().contains("共丢弃"));
+    }
+
+    @Test
+    void listenerReceivesOnlyRetainedEntries() {
+        ScriptLogger logger = new ScriptLogger(10, 1, 0, 0);
+        List<String> received = new ArrayList<>();
+        logger.setListener(entry -> received.add(entry.getMessage()));
+
+        logger.debug("d1");
+        logger.debug("d2");
+        logger.info("i1");
+
+        assertEquals(List.of("d1", "i1"), received);
+    }
+
+    @Test
+    void clearResetsEntriesAndCounters() {
+        ScriptLogger logger = new ScriptLogger(1, 0, 0, 0);
+        logger.info("a");
+        logger.info("b");
+        logger.error("c");
+
+        logger.clear();
+
+        assertTrue(logger.getLogs().isEmpty());
+        assertEquals(0, logger.getDroppedCount());
+        assertEquals(0, logger.getErrorCount());
+        assertEquals("", logger.getFullLog());
+    }
+}